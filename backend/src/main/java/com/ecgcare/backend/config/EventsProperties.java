@@ -0,0 +1,20 @@
+package com.ecgcare.backend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "events")
+public class EventsProperties {
+    // Open streams per doctor; the oldest is closed when another one connects
+    private int maxConnectionsPerDoctor = 5;
+    // Clients reconnect after this; EventSource does so on its own
+    private Duration timeout = Duration.ofMinutes(30);
+    // Comment lines keep idle connections open through proxies
+    private Duration heartbeatInterval = Duration.ofSeconds(15);
+    private int senderThreads = 2;
+}
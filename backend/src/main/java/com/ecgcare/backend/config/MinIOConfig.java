@@ -2,10 +2,12 @@ package com.ecgcare.backend.config;
 
 import io.minio.MinioClient;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
 @RequiredArgsConstructor
 public class MinIOConfig {
     private final MinIOProperties minIOProperties;
@@ -12,4 +12,9 @@ public class MinIOProperties {
     private String accessKey;
     private String secretKey;
     private String bucket;
+    // Endpoint clients use to reach MinIO directly (presigned URLs); defaults to the backend endpoint
+    private String publicEndpoint;
+    private String region = "us-east-1";
+    // Part size used for streaming uploads; bounds the client-side buffer per upload (MinIO minimum is 5 MiB)
+    private long partSize = 5L * 1024 * 1024;
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+package com.ecgcare.backend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "ml")
+public class MlProperties {
+    // Base URLs of the ML service replicas; requests are spread across them
+    private List<String> replicas = new ArrayList<>(List.of("http://localhost:8000"));
+    private String predictPath = "/predict";
+    // binary streams the stored image as it is read; json sends it base64 encoded
+    private Transport transport = Transport.binary;
+    private Jobs jobs = new Jobs();
+    private Batch batch = new Batch();
+    private ResultCache resultCache = new ResultCache();
+    private Client client = new Client();
+    private Pool pool = new Pool();
+    private Onnx onnx = new Onnx();
+    private Preprocess preprocess = new Preprocess();
+    private Rescore rescore = new Rescore();
+
+    public enum Transport {
+        binary, json
+    }
+
+    public enum Fit {
+        stretch, crop
+    }
+
+    @Data
+    public static class Jobs {
+        // Upper bound on predictions in flight; keep it above batch.max-size so batches can fill up
+        private int workerThreads = 16;
+        // Workers that may run background jobs (queued on upload); the rest stay free for requests
+        private int backgroundWorkers = 4;
+        private String defaultModelVersion = "v1.0";
+        // Used when a prediction or re-scoring run does not name one
+        private BigDecimal defaultThreshold = new BigDecimal("0.5");
+        private int maxAttempts = 3;
+        private Duration retryBaseDelay = Duration.ofSeconds(30);
+        private Duration retryMaxDelay = Duration.ofMinutes(10);
+        private Duration lease = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class Batch {
+        private boolean enabled = true;
+        private String path = "/predict/batch";
+        private int maxSize = 8;
+        // How long the first request of a batch waits for company
+        private Duration maxDelay = Duration.ofMillis(20);
+        private int maxConcurrentBatches = 2;
+        private int queueCapacity = 256;
+    }
+
+    @Data
+    public static class Client {
+        private int maxConnections = 32;
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        // Longest silence on the socket while the model runs
+        private Duration readTimeout = Duration.ofSeconds(30);
+        // Hard limit on a whole call, body upload included
+        private Duration deadline = Duration.ofSeconds(60);
+        private int maxConcurrentCalls = 16;
+        private Duration bulkheadWait = Duration.ofSeconds(1);
+        private int failureThreshold = 5;
+        private Duration openDuration = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Pool {
+        // Health probes hit each replica's "/" route
+        private Duration probeTimeout = Duration.ofSeconds(2);
+        private int ejectAfterFailures = 3;
+        private Duration ejectionDuration = Duration.ofSeconds(30);
+        private Duration maxEjectionDuration = Duration.ofMinutes(5);
+        // A replica whose average latency exceeds the median by this factor is ejected as an outlier
+        private double slowFactor = 3.0;
+        private Duration minSlowLatency = Duration.ofSeconds(1);
+        private int maxEjectionPercent = 50;
+    }
+
+    @Data
+    public static class Onnx {
+        // Runs the exported model in the JVM for requests asking for model-version
+        private boolean enabled = false;
+        private String modelPath = "models/model.onnx";
+        private String modelVersion = "v1.0-onnx";
+        // Predictions run at once on the shared session, each with its own input tensor
+        private int poolSize = 2;
+        private int intraOpThreads = 2;
+        private Duration acquireTimeout = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Preprocess {
+        // Send the model a copy at its input size instead of the original
+        private boolean enabled = true;
+        private int size = 224;
+        // stretch matches the ViT processor; crop keeps the aspect ratio and drops the edges
+        private Fit fit = Fit.stretch;
+        // In-memory budget for prepared inputs; they are also stored with the scan's derivatives
+        private long cacheBytes = 32L * 1024 * 1024;
+    }
+
+    @Data
+    public static class Rescore {
+        // Doctors allowed to start re-scoring runs
+        private List<UUID> adminDoctorIds = new ArrayList<>();
+        // Jobs of a run queued or running at once; they also only use the background workers
+        private int maxInFlight = 16;
+        private int pageSize = 100;
+        // Window over which throughput, and from it the ETA, is measured
+        private Duration throughputWindow = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class ResultCache {
+        private boolean enabled = true;
+        // Predictions kept in memory, keyed by content checksum and model version
+        private int maxEntries = 10_000;
+    }
+}
@@ -0,0 +1,115 @@
+package com.ecgcare.backend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "scans")
+public class ScanProperties {
+    private Download download = new Download();
+    private Upload upload = new Upload();
+    private Ingest ingest = new Ingest();
+    private Derivatives derivatives = new Derivatives();
+    private Cache cache = new Cache();
+    private Deletion deletion = new Deletion();
+    private Reconcile reconcile = new Reconcile();
+    private Export export = new Export();
+    private Encryption encryption = new Encryption();
+    private Normalization normalization = new Normalization();
+
+    @Data
+    public static class Download {
+        // Allows clients to ask for a presigned object-store URL instead of streaming through the backend
+        private boolean presignedEnabled = false;
+        private Duration presignedTtl = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Upload {
+        private long defaultChunkSize = 8L * 1024 * 1024;
+        // Server-side assembly needs every part except the last to be at least 5 MiB
+        private long minChunkSize = 5L * 1024 * 1024;
+        private long maxChunkSize = 64L * 1024 * 1024;
+        private int maxParts = 10_000;
+        private Duration sessionTtl = Duration.ofHours(24);
+        // Time a completion may take to assemble the parts before the cleanup job expires the session
+        private Duration completingTimeout = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Ingest {
+        // Concurrent object-store writes per batch request
+        private int workerThreads = 4;
+        private int maxFiles = 200;
+        // Upper bound for a single entry extracted from an uploaded ZIP archive
+        private long maxEntrySize = 100L * 1024 * 1024;
+    }
+
+    @Data
+    public static class Derivatives {
+        private int thumbnailSize = 256;
+        private int previewSize = 1280;
+        private float jpegQuality = 0.85f;
+        // Generate derivatives right after upload instead of on first request
+        private boolean eager = false;
+        private int workerThreads = 2;
+        // In-memory budget for hot thumbnails
+        private long cacheBytes = 32L * 1024 * 1024;
+    }
+
+    @Data
+    public static class Cache {
+        // Local disk copy of blobs read from MinIO
+        private boolean enabled = true;
+        private String directory = "./data/blob-cache";
+        private long maxBytes = 1024L * 1024 * 1024;
+        // Threads that copy blobs into the cache after a ranged read missed it
+        private int fillThreads = 2;
+    }
+
+    @Data
+    public static class Deletion {
+        private int batchSize = 100;
+        private Duration retryBaseDelay = Duration.ofMinutes(1);
+        private Duration retryMaxDelay = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Reconcile {
+        private boolean enabled = true;
+        private int pageSize = 500;
+        // Objects younger than this may belong to an upload that has not committed yet
+        private Duration orphanGrace = Duration.ofHours(24);
+    }
+
+    @Data
+    public static class Export {
+        // Objects opened ahead of the ZIP writer, per export
+        private int prefetch = 4;
+        private int fetchThreads = 8;
+        private int pageSize = 100;
+    }
+
+    @Data
+    public static class Encryption {
+        private boolean enabled = true;
+        // Base64 key material that wraps the per-blob DEKs
+        private String masterKey;
+        private int segmentSize = 64 * 1024;
+    }
+
+    @Data
+    public static class Normalization {
+        private boolean enabled = true;
+        // Upload types re-encoded as PNG; already compressed formats are stored as uploaded
+        private List<String> formats = List.of("image/bmp", "image/x-bmp", "image/x-ms-bmp", "image/tiff");
+        private boolean keepOriginal = false;
+        // Larger images are stored as uploaded rather than decoded in memory
+        private long maxPixels = 40_000_000L;
+    }
+}
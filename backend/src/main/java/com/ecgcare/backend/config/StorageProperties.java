@@ -0,0 +1,19 @@
+package com.ecgcare.backend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "storage")
+public class StorageProperties {
+    // minio, filesystem or memory
+    private String backend = "minio";
+    private Filesystem filesystem = new Filesystem();
+
+    @Data
+    public static class Filesystem {
+        private String root = "./data/objects";
+    }
+}
@@ -2,6 +2,7 @@ package com.ecgcare.backend.controller;
 
 import com.ecgcare.backend.config.JwtService;
 import com.ecgcare.backend.dto.request.LoginRequest;
+import com.ecgcare.backend.dto.request.PreferencesRequest;
 import com.ecgcare.backend.dto.request.RefreshTokenRequest;
 import com.ecgcare.backend.dto.request.RegisterRequest;
 import com.ecgcare.backend.dto.response.ApiResponse;
@@ -87,4 +88,13 @@ public class AuthController {
         DoctorResponse response = authService.getCurrentUser(doctorId);
         return ResponseEntity.ok(ApiResponse.success(response));
     }
+
+    @PutMapping("/me/preferences")
+    public ResponseEntity<ApiResponse<DoctorResponse>> updatePreferences(
+            @RequestBody PreferencesRequest request,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        DoctorResponse response = authService.updatePreferences(doctorId, request);
+        return ResponseEntity.ok(ApiResponse.success("Preferences updated", response));
+    }
 }
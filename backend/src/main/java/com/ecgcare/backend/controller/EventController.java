@@ -0,0 +1,23 @@
+package com.ecgcare.backend.controller;
+
+import com.ecgcare.backend.service.JobEventService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/events")
+@RequiredArgsConstructor
+public class EventController {
+    private final JobEventService jobEventService;
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJobEvents(Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        return jobEventService.subscribe(doctorId);
+    }
+}
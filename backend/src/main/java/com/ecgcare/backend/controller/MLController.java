@@ -1,16 +1,25 @@
 package com.ecgcare.backend.controller;
 
 import com.ecgcare.backend.dto.request.PredictRequest;
+import com.ecgcare.backend.dto.request.RescoreRequest;
 import com.ecgcare.backend.dto.response.ApiResponse;
 import com.ecgcare.backend.dto.response.MlResultResponse;
 import com.ecgcare.backend.dto.response.PageResponse;
+import com.ecgcare.backend.dto.response.PredictionJobResponse;
+import com.ecgcare.backend.dto.response.RescoreRunResponse;
+import com.ecgcare.backend.entity.PredictionJob;
 import com.ecgcare.backend.service.MLService;
+import com.ecgcare.backend.service.PredictionJobService;
+import com.ecgcare.backend.service.RescoreService;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.net.URI;
 import java.util.UUID;
 
 @RestController
@@ -18,19 +27,38 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class MLController {
     private final MLService mlService;
+    private final PredictionJobService predictionJobService;
+    private final RescoreService rescoreService;
 
     @PostMapping("/predict/{scanId}")
-    public ResponseEntity<ApiResponse<MlResultResponse>> predict(
+    public ResponseEntity<ApiResponse<PredictionJobResponse>> predict(
             @PathVariable UUID scanId,
             @RequestBody(required = false) PredictRequest request,
             Authentication authentication) {
         UUID doctorId = UUID.fromString(authentication.getName());
 
-        String modelVersion = request != null ? request.getModelVersion() : "v1.0";
-        BigDecimal threshold = request != null ? request.getThreshold() : new BigDecimal("0.5");
+        String modelVersion = request != null ? request.getModelVersion() : null;
+        BigDecimal threshold = request != null ? request.getThreshold() : null;
 
-        MlResultResponse response = mlService.predict(scanId, doctorId, modelVersion, threshold);
-        return ResponseEntity.ok(ApiResponse.success("Prediction completed", response));
+        boolean force = request != null && request.isForce();
+
+        PredictionJobResponse response = predictionJobService.enqueue(scanId, doctorId, modelVersion, threshold,
+                force);
+        if (response.getStatus() == PredictionJob.JobStatus.succeeded) {
+            return ResponseEntity.ok(ApiResponse.success("Prediction reused", response));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/api/ml/jobs/" + response.getJobId()))
+                .body(ApiResponse.success("Prediction queued", response));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<ApiResponse<PredictionJobResponse>> getJob(
+            @PathVariable UUID jobId,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        PredictionJobResponse response = predictionJobService.getJob(jobId, doctorId);
+        return ResponseEntity.ok(ApiResponse.success(response));
     }
 
     @GetMapping("/results/{resultId}")
@@ -41,7 +69,34 @@ public class MLController {
         MlResultResponse response = mlService.getResult(resultId, doctorId);
         return ResponseEntity.ok(ApiResponse.success(response));
     }
-}
 
+    @PostMapping("/rescore")
+    public ResponseEntity<ApiResponse<RescoreRunResponse>> startRescore(
+            @Valid @RequestBody RescoreRequest request,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        RescoreRunResponse response = rescoreService.start(doctorId, request.getModelVersion(),
+                request.getThreshold());
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/api/ml/rescore/" + response.getRunId()))
+                .body(ApiResponse.success("Re-scoring started", response));
+    }
 
+    @GetMapping("/rescore/{runId}")
+    public ResponseEntity<ApiResponse<RescoreRunResponse>> getRescore(
+            @PathVariable UUID runId,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        RescoreRunResponse response = rescoreService.getRun(runId, doctorId);
+        return ResponseEntity.ok(ApiResponse.success(response));
+    }
 
+    @PostMapping("/rescore/{runId}/cancel")
+    public ResponseEntity<ApiResponse<RescoreRunResponse>> cancelRescore(
+            @PathVariable UUID runId,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        RescoreRunResponse response = rescoreService.cancel(runId, doctorId);
+        return ResponseEntity.ok(ApiResponse.success("Re-scoring cancelled", response));
+    }
+}
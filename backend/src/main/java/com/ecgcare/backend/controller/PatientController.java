@@ -6,13 +6,19 @@ import com.ecgcare.backend.dto.response.ApiResponse;
 import com.ecgcare.backend.dto.response.PageResponse;
 import com.ecgcare.backend.dto.response.PatientResponse;
 import com.ecgcare.backend.service.PatientService;
+import com.ecgcare.backend.service.ScanExportService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.UUID;
 
@@ -21,6 +27,7 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class PatientController {
     private final PatientService patientService;
+    private final ScanExportService scanExportService;
 
     @PostMapping
     public ResponseEntity<ApiResponse<PatientResponse>> createPatient(
@@ -63,6 +70,22 @@ public class PatientController {
         return ResponseEntity.ok(ApiResponse.success("Patient updated successfully", response));
     }
 
+    @GetMapping("/{patientId}/export")
+    public ResponseEntity<StreamingResponseBody> exportPatient(
+            @PathVariable UUID patientId,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        StreamingResponseBody body = scanExportService.exportPatient(patientId, doctorId);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("patient-" + patientId + ".zip")
+                        .build()
+                        .toString())
+                .cacheControl(CacheControl.noStore())
+                .body(body);
+    }
+
     @DeleteMapping("/{patientId}")
     public ResponseEntity<ApiResponse<?>> deletePatient(
             @PathVariable UUID patientId,
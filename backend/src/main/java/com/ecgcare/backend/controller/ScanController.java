@@ -1,22 +1,32 @@
 package com.ecgcare.backend.controller;
 
 import com.ecgcare.backend.dto.response.ApiResponse;
+import com.ecgcare.backend.dto.response.BatchUploadResponse;
 import com.ecgcare.backend.dto.response.PageResponse;
+import com.ecgcare.backend.dto.response.PresignedUrlResponse;
 import com.ecgcare.backend.dto.response.ScanResponse;
+import com.ecgcare.backend.service.ScanDerivativeService;
+import com.ecgcare.backend.service.ScanIngestService;
 import com.ecgcare.backend.service.ScanService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.InputStream;
+import java.net.URI;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 @RestController
@@ -24,12 +34,15 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class ScanController {
     private final ScanService scanService;
+    private final ScanIngestService scanIngestService;
+    private final ScanDerivativeService scanDerivativeService;
 
     @PostMapping("/upload")
     public ResponseEntity<ApiResponse<ScanResponse>> uploadScan(
             @RequestParam("file") MultipartFile file,
             @RequestParam("patientId") UUID patientId,
             @RequestParam(value = "metadata", required = false) String metadata,
+            @RequestParam(value = "predict", required = false) Boolean predict,
             Authentication authentication) {
         UUID doctorId = UUID.fromString(authentication.getName());
 
@@ -39,11 +52,25 @@ public class ScanController {
             metadataMap.put("notes", metadata);
         }
 
-        ScanResponse response = scanService.uploadScan(file, patientId, doctorId, metadataMap);
+        ScanResponse response = scanService.uploadScan(file, patientId, doctorId, metadataMap, predict);
         return ResponseEntity.status(HttpStatus.CREATED)
                 .body(ApiResponse.success("Scan uploaded successfully", response));
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<ApiResponse<BatchUploadResponse>> uploadBatch(
+            @RequestParam(value = "files", required = false) List<MultipartFile> files,
+            @RequestParam(value = "archive", required = false) MultipartFile archive,
+            @RequestParam("patientId") UUID patientId,
+            @RequestParam(value = "metadata", required = false) String metadata,
+            @RequestParam(value = "predict", required = false) Boolean predict,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        BatchUploadResponse response = scanIngestService.ingest(patientId, doctorId, files, archive, metadata,
+                predict);
+        return ResponseEntity.ok(ApiResponse.success("Batch processed", response));
+    }
+
     @GetMapping("/{scanId}")
     public ResponseEntity<ApiResponse<ScanResponse>> getScan(
             @PathVariable UUID scanId,
@@ -54,21 +81,152 @@ public class ScanController {
     }
 
     @GetMapping("/{scanId}/download")
-    public ResponseEntity<InputStreamResource> downloadScan(
+    public ResponseEntity<?> downloadScan(
             @PathVariable UUID scanId,
+            @RequestParam(value = "mode", required = false) String mode,
+            @RequestHeader HttpHeaders requestHeaders,
+            WebRequest webRequest,
             Authentication authentication) {
         UUID doctorId = UUID.fromString(authentication.getName());
-        InputStream inputStream = scanService.downloadScan(scanId, doctorId);
+
+        // Opt-in: hand the transfer to the object store; streams as usual when presigning is disabled
+        if ("redirect".equals(mode) || "url".equals(mode)) {
+            Optional<PresignedUrlResponse> presigned = scanService.presignDownload(scanId, doctorId);
+            if (presigned.isPresent()) {
+                if ("redirect".equals(mode)) {
+                    return ResponseEntity.status(HttpStatus.FOUND)
+                            .location(URI.create(presigned.get().getUrl()))
+                            .cacheControl(CacheControl.noStore())
+                            .build();
+                }
+                return ResponseEntity.ok(ApiResponse.success(presigned.get()));
+            }
+        }
 
         ScanResponse scanInfo = scanService.getScan(scanId, doctorId);
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"scan." +
-                        scanInfo.getMimetype().split("/")[1] + "\"")
-                .contentType(MediaType.parseMediaType(scanInfo.getMimetype()))
+        // The content is immutable, so the checksum is a strong validator
+        String validator = scanInfo.getChecksum() != null ? scanInfo.getChecksum().replace("sha256:", "")
+                : scanId.toString();
+        String etag = "\"" + validator + "\"";
+        long lastModified = scanInfo.getUploadedAt().toInstant().toEpochMilli();
+        // Sets ETag and Last-Modified on the response, and the 304 status when the client copy is current
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            return null;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"scan." +
+                scanInfo.getMimetype().split("/")[1] + "\"");
+        headers.setContentType(MediaType.parseMediaType(scanInfo.getMimetype()));
+
+        Long totalSize = scanInfo.getSizeBytes();
+        HttpRange range = totalSize != null ? requestedRange(requestHeaders, etag, lastModified) : null;
+        if (range == null) {
+            if (totalSize != null) {
+                headers.setContentLength(totalSize);
+            }
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(new InputStreamResource(scanService.downloadScan(scanId, doctorId)));
+        }
+
+        long start;
+        long end;
+        try {
+            start = range.getRangeStart(totalSize);
+            end = range.getRangeEnd(totalSize);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + totalSize)
+                    .build();
+        }
+        long length = end - start + 1;
+        InputStream inputStream = scanService.downloadScan(scanId, doctorId, start, length);
+
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + totalSize);
+        headers.setContentLength(length);
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .headers(headers)
                 .body(new InputStreamResource(inputStream));
     }
 
+    /**
+     * Resolves the Range header to a single range, or null when the full content should be sent.
+     * Multiple ranges are coalesced into one covering range rather than a multipart response.
+     */
+    private HttpRange requestedRange(HttpHeaders requestHeaders, String etag, long lastModified) {
+        if (requestHeaders.getFirst(HttpHeaders.RANGE) == null) {
+            return null;
+        }
+
+        // If-Range: only honour the range when the client's copy is still current
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(etag)) {
+            long ifRangeDate = requestHeaders.getFirstDate(HttpHeaders.IF_RANGE);
+            if (ifRangeDate == -1 || ifRangeDate / 1000 != lastModified / 1000) {
+                return null;
+            }
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = requestHeaders.getRange();
+        } catch (IllegalArgumentException e) {
+            // An unparseable Range header is ignored
+            return null;
+        }
+        if (ranges.isEmpty()) {
+            return null;
+        }
+        if (ranges.size() == 1) {
+            return ranges.get(0);
+        }
+        return new CoalescedRange(ranges);
+    }
+
+    private static final class CoalescedRange extends HttpRange {
+        private final List<HttpRange> ranges;
+
+        private CoalescedRange(List<HttpRange> ranges) {
+            this.ranges = ranges;
+        }
+
+        @Override
+        public long getRangeStart(long length) {
+            return ranges.stream().mapToLong(r -> r.getRangeStart(length)).min().orElse(0);
+        }
+
+        @Override
+        public long getRangeEnd(long length) {
+            return ranges.stream().mapToLong(r -> r.getRangeEnd(length)).max().orElse(length - 1);
+        }
+    }
+
+    @GetMapping("/{scanId}/thumbnail")
+    public ResponseEntity<byte[]> getThumbnail(
+            @PathVariable UUID scanId,
+            @RequestParam(value = "profile", defaultValue = "thumbnail") ScanDerivativeService.Profile profile,
+            WebRequest webRequest,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        ScanResponse scanInfo = scanService.getScan(scanId, doctorId);
+
+        String validator = scanInfo.getChecksum() != null ? scanInfo.getChecksum().replace("sha256:", "")
+                : scanId.toString();
+        if (webRequest.checkNotModified("\"" + validator + "-" + profile + "\"")) {
+            return null;
+        }
+
+        ScanDerivativeService.Derivative derivative = scanDerivativeService.getDerivative(scanId, doctorId, profile);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .contentType(MediaType.parseMediaType(derivative.mimetype()))
+                .body(derivative.data());
+    }
+
     @DeleteMapping("/{scanId}")
     public ResponseEntity<ApiResponse<?>> deleteScan(
             @PathVariable UUID scanId,
@@ -0,0 +1,79 @@
+package com.ecgcare.backend.controller;
+
+import com.ecgcare.backend.dto.request.UploadInitiateRequest;
+import com.ecgcare.backend.dto.response.ApiResponse;
+import com.ecgcare.backend.dto.response.ScanResponse;
+import com.ecgcare.backend.dto.response.UploadPartResponse;
+import com.ecgcare.backend.dto.response.UploadSessionResponse;
+import com.ecgcare.backend.exception.BadRequestException;
+import com.ecgcare.backend.service.ScanUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/scans/uploads")
+@RequiredArgsConstructor
+public class ScanUploadController {
+    private final ScanUploadService scanUploadService;
+
+    @PostMapping
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> initiate(
+            @Valid @RequestBody UploadInitiateRequest request,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        UploadSessionResponse response = scanUploadService.initiate(request, doctorId);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(ApiResponse.success("Upload initiated", response));
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> getUpload(
+            @PathVariable UUID uploadId,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        return ResponseEntity.ok(ApiResponse.success(scanUploadService.getSession(uploadId, doctorId)));
+    }
+
+    @PutMapping("/{uploadId}/parts/{partNumber}")
+    public ResponseEntity<ApiResponse<UploadPartResponse>> uploadPart(
+            @PathVariable UUID uploadId,
+            @PathVariable int partNumber,
+            HttpServletRequest request,
+            Authentication authentication) throws IOException {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        long contentLength = request.getContentLengthLong();
+        if (contentLength < 0) {
+            throw new BadRequestException("Content-Length is required");
+        }
+        UploadPartResponse response = scanUploadService.uploadPart(uploadId, partNumber, request.getInputStream(),
+                contentLength, doctorId);
+        return ResponseEntity.ok(ApiResponse.success(response));
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<ApiResponse<ScanResponse>> complete(
+            @PathVariable UUID uploadId,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        ScanResponse response = scanUploadService.complete(uploadId, doctorId);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(ApiResponse.success("Scan uploaded successfully", response));
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<ApiResponse<?>> abort(
+            @PathVariable UUID uploadId,
+            Authentication authentication) {
+        UUID doctorId = UUID.fromString(authentication.getName());
+        scanUploadService.abort(uploadId, doctorId);
+        return ResponseEntity.ok(ApiResponse.success("Upload aborted", null));
+    }
+}
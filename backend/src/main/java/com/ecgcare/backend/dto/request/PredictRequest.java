@@ -6,8 +6,11 @@ import java.math.BigDecimal;
 
 @Data
 public class PredictRequest {
-    private String modelVersion = "v1.0";
-    private BigDecimal threshold = new BigDecimal("0.5");
+    // Both default to ml.jobs.default-model-version and ml.jobs.default-threshold when left out
+    private String modelVersion;
+    private BigDecimal threshold;
+    // Run the model again even when a stored prediction for the same content exists
+    private boolean force = false;
 }
 
 
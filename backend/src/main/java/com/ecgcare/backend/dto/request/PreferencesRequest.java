@@ -0,0 +1,9 @@
+package com.ecgcare.backend.dto.request;
+
+import lombok.Data;
+
+@Data
+public class PreferencesRequest {
+    // Start a prediction as soon as a scan is uploaded; unchanged when absent
+    private Boolean eagerInference;
+}
@@ -0,0 +1,14 @@
+package com.ecgcare.backend.dto.request;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class RescoreRequest {
+    @NotBlank(message = "Model version is required")
+    private String modelVersion;
+
+    private BigDecimal threshold;
+}
@@ -0,0 +1,29 @@
+package com.ecgcare.backend.dto.request;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+import java.util.UUID;
+
+@Data
+public class UploadInitiateRequest {
+    @NotNull(message = "Patient ID is required")
+    private UUID patientId;
+
+    @NotBlank(message = "Filename is required")
+    private String filename;
+
+    @NotBlank(message = "Mimetype is required")
+    private String mimetype;
+
+    @NotNull(message = "Total size is required")
+    @Positive(message = "Total size must be positive")
+    private Long totalSize;
+
+    // Optional; the server default is used when absent and the value is clamped to the allowed range
+    private Long chunkSize;
+
+    private String metadata;
+}
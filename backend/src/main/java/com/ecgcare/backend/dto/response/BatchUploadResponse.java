@@ -0,0 +1,34 @@
+package com.ecgcare.backend.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchUploadResponse {
+    private UUID patientId;
+    private Integer total;
+    private Integer succeeded;
+    private Integer failed;
+    private List<FileResult> results;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FileResult {
+        private String filename;
+        private String status;
+        private UUID scanId;
+        private String checksum;
+        private Long sizeBytes;
+        private String error;
+    }
+}
@@ -19,6 +19,7 @@ public class DoctorResponse {
     private String phone;
     private Boolean isActive;
     private Boolean mfaEnabled;
+    private Boolean eagerInference;
     private OffsetDateTime createdAt;
 }
 
@@ -0,0 +1,27 @@
+package com.ecgcare.backend.dto.response;
+
+import com.ecgcare.backend.entity.PredictionJob.JobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PredictionJobResponse {
+    private UUID jobId;
+    private UUID scanId;
+    private UUID patientId;
+    private String modelVersion;
+    private JobStatus status;
+    private Integer attempts;
+    private String error;
+    private UUID resultId;
+    private OffsetDateTime createdAt;
+    private OffsetDateTime updatedAt;
+}
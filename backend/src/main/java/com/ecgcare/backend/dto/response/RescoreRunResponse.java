@@ -0,0 +1,34 @@
+package com.ecgcare.backend.dto.response;
+
+import com.ecgcare.backend.entity.RescoreRun.RunStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RescoreRunResponse {
+    private UUID runId;
+    private String modelVersion;
+    private BigDecimal threshold;
+    private RunStatus status;
+    private Long totalScans;
+    private Long scanned;
+    private Long skipped;
+    private Long inFlight;
+    private Long succeeded;
+    private Long failed;
+    // Predictions finished per minute over the throughput window
+    private Double throughputPerMinute;
+    private OffsetDateTime estimatedCompletionAt;
+    private OffsetDateTime createdAt;
+    private OffsetDateTime updatedAt;
+    private OffsetDateTime completedAt;
+}
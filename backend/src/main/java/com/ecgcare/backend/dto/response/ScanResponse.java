@@ -19,6 +19,7 @@ public class ScanResponse {
     private String storageUri;
     private String mimetype;
     private String checksum;
+    private Long sizeBytes;
     private Map<String, Object> metadata;
     private UUID uploadedBy;
     private OffsetDateTime uploadedAt;
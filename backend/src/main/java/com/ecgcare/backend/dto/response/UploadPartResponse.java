@@ -0,0 +1,16 @@
+package com.ecgcare.backend.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadPartResponse {
+    private Integer partNumber;
+    private Long sizeBytes;
+    private String checksum;
+}
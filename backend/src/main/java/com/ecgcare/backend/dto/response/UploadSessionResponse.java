@@ -0,0 +1,30 @@
+package com.ecgcare.backend.dto.response;
+
+import com.ecgcare.backend.entity.UploadSession.UploadStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionResponse {
+    private UUID uploadId;
+    private UUID patientId;
+    private String filename;
+    private String mimetype;
+    private Long totalSize;
+    private Long chunkSize;
+    private Integer totalParts;
+    private UploadStatus status;
+    private List<Integer> receivedParts;
+    private UUID scanId;
+    private OffsetDateTime createdAt;
+    private OffsetDateTime expiresAt;
+}
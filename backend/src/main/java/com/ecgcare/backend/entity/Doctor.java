@@ -34,6 +34,11 @@ public class Doctor {
     @Builder.Default
     private Boolean isActive = true;
 
+    // Start a prediction for every scan this doctor uploads
+    @Column(name = "eager_inference", nullable = false)
+    @Builder.Default
+    private Boolean eagerInference = false;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     @Builder.Default
     private OffsetDateTime createdAt = OffsetDateTime.now();
@@ -45,6 +45,9 @@ public class EcgScan {
     @Column(name = "checksum")
     private String checksum;
 
+    @Column(name = "size_bytes")
+    private Long sizeBytes;
+
     @Column(name = "metadata", columnDefinition = "jsonb")
     @JdbcTypeCode(SqlTypes.JSON)
     private Map<String, Object> metadata;
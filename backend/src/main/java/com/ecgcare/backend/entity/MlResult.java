@@ -33,6 +33,10 @@ public class MlResult {
     @JoinColumn(name = "scan_id")
     private EcgScan scan;
 
+    // Content checksum of the scan, kept when the scan is deleted so the prediction can be reused
+    @Column(name = "checksum")
+    private String checksum;
+
     @Column(name = "model_version", nullable = false)
     private String modelVersion;
 
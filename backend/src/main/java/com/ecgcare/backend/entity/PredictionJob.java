@@ -0,0 +1,91 @@
+package com.ecgcare.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "prediction_job")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PredictionJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "job_id")
+    private UUID jobId;
+
+    @Column(name = "scan_id", nullable = false)
+    private UUID scanId;
+
+    @Column(name = "patient_id", nullable = false)
+    private UUID patientId;
+
+    @Column(name = "requested_by", nullable = false)
+    private UUID requestedBy;
+
+    @Column(name = "model_version", nullable = false)
+    private String modelVersion;
+
+    @Column(name = "threshold", nullable = false, precision = 5, scale = 4)
+    private BigDecimal threshold;
+
+    // Run inference even when a stored result could be reused
+    @Column(name = "force", nullable = false)
+    @Builder.Default
+    private Boolean force = false;
+
+    // Queued on upload rather than requested; runs behind requested jobs
+    @Column(name = "background", nullable = false)
+    @Builder.Default
+    private Boolean background = false;
+
+    // Set for jobs submitted by a re-scoring run, which act for the system rather than a doctor
+    @Column(name = "rescore_run_id")
+    private UUID rescoreRunId;
+
+    // Set while the job is queued or running; unique, so each prediction has one job in flight
+    @Column(name = "dedup_key", unique = true)
+    private String dedupKey;
+
+    @Column(name = "status", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private JobStatus status;
+
+    @Column(name = "attempts", nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    @Column(name = "result_id")
+    private UUID resultId;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    @Builder.Default
+    private OffsetDateTime nextAttemptAt = OffsetDateTime.now();
+
+    // A running job whose lease expired belongs to a worker that died and is picked up again
+    @Column(name = "locked_until")
+    private OffsetDateTime lockedUntil;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    @Builder.Default
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "updated_at", nullable = false)
+    @Builder.Default
+    private OffsetDateTime updatedAt = OffsetDateTime.now();
+
+    public enum JobStatus {
+        queued, running, succeeded, failed
+    }
+}
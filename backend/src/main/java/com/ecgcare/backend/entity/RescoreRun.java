@@ -0,0 +1,69 @@
+package com.ecgcare.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "rescore_run")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RescoreRun {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "run_id")
+    private UUID runId;
+
+    @Column(name = "model_version", nullable = false)
+    private String modelVersion;
+
+    @Column(name = "threshold", nullable = false, precision = 5, scale = 4)
+    private BigDecimal threshold;
+
+    @Column(name = "status", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private RunStatus status;
+
+    @Column(name = "started_by", nullable = false)
+    private UUID startedBy;
+
+    // Checkpoint: every scan up to this id has been submitted or skipped
+    @Column(name = "last_scan_id")
+    private UUID lastScanId;
+
+    @Column(name = "total_scans", nullable = false)
+    @Builder.Default
+    private Long totalScans = 0L;
+
+    @Column(name = "scanned", nullable = false)
+    @Builder.Default
+    private Long scanned = 0L;
+
+    // Scans that already had a result for this model and threshold
+    @Column(name = "skipped", nullable = false)
+    @Builder.Default
+    private Long skipped = 0L;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    @Builder.Default
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "updated_at", nullable = false)
+    @Builder.Default
+    private OffsetDateTime updatedAt = OffsetDateTime.now();
+
+    @Column(name = "completed_at")
+    private OffsetDateTime completedAt;
+
+    public enum RunStatus {
+        running, completed, cancelled
+    }
+}
@@ -0,0 +1,53 @@
+package com.ecgcare.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "scan_blob")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScanBlob {
+    @Id
+    @Column(name = "checksum")
+    private String checksum;
+
+    @Column(name = "object_key", nullable = false, unique = true)
+    private String objectKey;
+
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes;
+
+    @Column(name = "mimetype", nullable = false)
+    private String mimetype;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    // Set when the object is encrypted; the DEK is wrapped with the master key
+    @Column(name = "wrapping_scheme")
+    private String wrappingScheme;
+
+    @Column(name = "dek_enc", columnDefinition = "bytea")
+    private byte[] dekEnc;
+
+    @Column(name = "dek_iv", columnDefinition = "bytea")
+    private byte[] dekIv;
+
+    @Column(name = "dek_tag", columnDefinition = "bytea")
+    private byte[] dekTag;
+
+    @Column(name = "dek_id")
+    private String dekId;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    @Builder.Default
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+}
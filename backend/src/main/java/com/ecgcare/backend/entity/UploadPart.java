@@ -0,0 +1,40 @@
+package com.ecgcare.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+
+@Entity
+@Table(name = "upload_part")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(UploadPartId.class)
+public class UploadPart {
+    @Id
+    @ManyToOne
+    @JoinColumn(name = "upload_id", nullable = false)
+    private UploadSession uploadSession;
+
+    @Id
+    @Column(name = "part_number", nullable = false)
+    private Integer partNumber;
+
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes;
+
+    @Column(name = "checksum", nullable = false)
+    private String checksum;
+
+    @Column(name = "object_key")
+    private String objectKey;
+
+    @Column(name = "uploaded_at", nullable = false)
+    @Builder.Default
+    private OffsetDateTime uploadedAt = OffsetDateTime.now();
+}
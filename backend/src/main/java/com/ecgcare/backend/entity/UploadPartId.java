@@ -0,0 +1,16 @@
+package com.ecgcare.backend.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadPartId implements Serializable {
+    private UUID uploadSession;
+    private Integer partNumber;
+}
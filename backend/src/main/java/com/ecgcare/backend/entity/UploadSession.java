@@ -0,0 +1,82 @@
+package com.ecgcare.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+@Entity
+@Table(name = "upload_session")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "upload_id")
+    private UUID uploadId;
+
+    @ManyToOne
+    @JoinColumn(name = "patient_id", nullable = false)
+    private Patient patient;
+
+    @ManyToOne
+    @JoinColumn(name = "doctor_id", nullable = false)
+    private Doctor doctor;
+
+    @Column(name = "filename")
+    private String filename;
+
+    @Column(name = "mimetype", nullable = false)
+    private String mimetype;
+
+    @Column(name = "total_size", nullable = false)
+    private Long totalSize;
+
+    @Column(name = "chunk_size", nullable = false)
+    private Long chunkSize;
+
+    @Column(name = "total_parts", nullable = false)
+    private Integer totalParts;
+
+    @Column(name = "status", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private UploadStatus status;
+
+    @Column(name = "scan_id")
+    private UUID scanId;
+
+    @Column(name = "metadata", columnDefinition = "jsonb")
+    @JdbcTypeCode(SqlTypes.JSON)
+    private Map<String, Object> metadata;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    @Builder.Default
+    private OffsetDateTime createdAt = OffsetDateTime.now();
+
+    @Column(name = "expires_at", nullable = false)
+    private OffsetDateTime expiresAt;
+
+    // Set when the parts are encrypted; the session's DEK is wrapped with the master key
+    @Column(name = "dek_enc", columnDefinition = "bytea")
+    private byte[] dekEnc;
+
+    @Column(name = "dek_iv", columnDefinition = "bytea")
+    private byte[] dekIv;
+
+    @Column(name = "dek_tag", columnDefinition = "bytea")
+    private byte[] dekTag;
+
+    public enum UploadStatus {
+        // completing: the parts are being assembled and no further parts are accepted
+        active, completing, completed, aborted, expired
+    }
+}
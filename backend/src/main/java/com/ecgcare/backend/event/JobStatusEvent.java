@@ -0,0 +1,23 @@
+package com.ecgcare.backend.event;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A prediction job or chunked upload changed state. Pushed to the doctor who owns it over the
+ * event stream once the change is committed.
+ *
+ * @param type    {@code prediction} or {@code upload}
+ * @param status  the job or upload status, as returned by its GET endpoint
+ * @param details type-specific fields, such as the result id of a finished prediction
+ */
+public record JobStatusEvent(String type, UUID id, UUID doctorId, String status, Map<String, Object> details,
+        OffsetDateTime at) {
+    public static final String PREDICTION = "prediction";
+    public static final String UPLOAD = "upload";
+
+    public JobStatusEvent(String type, UUID id, UUID doctorId, String status, Map<String, Object> details) {
+        this(type, id, doctorId, status, details, OffsetDateTime.now());
+    }
+}
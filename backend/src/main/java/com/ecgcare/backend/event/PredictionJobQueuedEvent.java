@@ -0,0 +1,10 @@
+package com.ecgcare.backend.event;
+
+import java.util.UUID;
+
+/**
+ * Published when a prediction job is queued, so workers can pick it up as soon as it commits
+ * instead of on the next poll.
+ */
+public record PredictionJobQueuedEvent(UUID jobId) {
+}
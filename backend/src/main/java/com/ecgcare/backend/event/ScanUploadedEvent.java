@@ -0,0 +1,12 @@
+package com.ecgcare.backend.event;
+
+import java.util.UUID;
+
+/**
+ * Published when a scan row is saved; listeners that need the row to be visible
+ * should use {@code @TransactionalEventListener}. {@code predict} asks for a prediction to be
+ * started in the background.
+ */
+public record ScanUploadedEvent(UUID scanId, UUID patientId, UUID doctorId, String storageUri, String mimetype,
+        boolean predict) {
+}
@@ -0,0 +1,15 @@
+package com.ecgcare.backend.exception;
+
+/**
+ * The ML service failed, timed out or was not called because it is considered unavailable.
+ * Prediction jobs that hit this are retried.
+ */
+public class MlServiceException extends RuntimeException {
+    public MlServiceException(String message) {
+        super(message);
+    }
+
+    public MlServiceException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,54 @@
+package com.ecgcare.backend.ml;
+
+import com.ecgcare.backend.config.MlProperties;
+import com.ecgcare.backend.service.InferenceBatcher;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Calls the Python ML service. Serves every model version, so it is asked last.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class HttpInferenceEngine implements InferenceEngine {
+    private final MlClient mlClient;
+    private final MlProperties mlProperties;
+    private final InferenceBatcher inferenceBatcher;
+
+    @Override
+    public boolean supports(String modelVersion) {
+        return true;
+    }
+
+    @Override
+    public Prediction predict(ScanImage image) throws IOException {
+        // Concurrent requests share one batch call when batching is enabled
+        if (inferenceBatcher.isEnabled()) {
+            return inferenceBatcher.submit(image).join();
+        }
+
+        // The binary transport pipes the stored image to the ML service as it is read
+        Map<String, Object> response = mlProperties.getTransport() == MlProperties.Transport.binary
+                ? mlClient.postImage(mlProperties.getPredictPath(), image)
+                : postJson(image);
+
+        if (response == null) {
+            throw new RuntimeException("ML service returned null response");
+        }
+        return Prediction.from(response);
+    }
+
+    private Map<String, Object> postJson(ScanImage image) throws IOException {
+        Map<String, Object> request = new HashMap<>();
+        request.put("scan_id", image.scanId().toString());
+        request.put("image_data", image.base64());
+        return mlClient.postJson(mlProperties.getPredictPath(), request);
+    }
+}
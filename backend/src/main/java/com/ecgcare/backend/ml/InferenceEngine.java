@@ -0,0 +1,13 @@
+package com.ecgcare.backend.ml;
+
+import java.io.IOException;
+
+/**
+ * Runs the model on one scan image. MLService asks the engines in order and uses the first one
+ * that serves the requested model version.
+ */
+public interface InferenceEngine {
+    boolean supports(String modelVersion);
+
+    Prediction predict(ScanImage image) throws IOException;
+}
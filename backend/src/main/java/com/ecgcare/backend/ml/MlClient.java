@@ -0,0 +1,334 @@
+package com.ecgcare.backend.ml;
+
+import com.ecgcare.backend.config.MlProperties;
+import com.ecgcare.backend.exception.MlServiceException;
+import com.ecgcare.backend.util.CircuitBreaker;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.entity.mime.AbstractContentBody;
+import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityTemplate;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * HTTP client for the ML service. Calls go through a pooled connection manager and are isolated
+ * from the rest of the application:
+ * <ul>
+ * <li>a bulkhead caps concurrent calls, so a slow service cannot absorb every worker thread;</li>
+ * <li>every call has a deadline, after which the request is aborted;</li>
+ * <li>a circuit breaker stops calling a failing service and probes it again after a pause.</li>
+ * </ul>
+ * Failures surface as {@link MlServiceException}. A scan that cannot be read from storage while the
+ * request body is written is not the service's fault; it surfaces as an {@link UncheckedIOException}
+ * and does not count against the breaker or the replica.
+ */
+@Component
+@Slf4j
+public class MlClient {
+    public static final String SCAN_ID_HEADER = "X-Scan-Id";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MlProperties.Client config;
+    private final MlReplicaPool replicaPool;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final Semaphore bulkhead;
+    private final CircuitBreaker circuitBreaker;
+    private final ScheduledExecutorService deadlines;
+
+    public MlClient(MlProperties mlProperties, MlReplicaPool replicaPool, ObjectMapper objectMapper,
+            MeterRegistry meterRegistry) {
+        this.config = mlProperties.getClient();
+        this.replicaPool = replicaPool;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+
+        connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(config.getMaxConnections())
+                .setMaxConnPerRoute(config.getMaxConnections())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(config.getConnectTimeout()))
+                        .setSocketTimeout(Timeout.of(config.getReadTimeout()))
+                        .build())
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(config.getBulkheadWait()))
+                        .setResponseTimeout(Timeout.of(config.getReadTimeout()))
+                        .build())
+                .disableAutomaticRetries()
+                .build();
+        bulkhead = new Semaphore(config.getMaxConcurrentCalls());
+        circuitBreaker = new CircuitBreaker(config.getFailureThreshold(), config.getOpenDuration());
+        deadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ml-client-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("ml.client.breaker.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("Circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+        Gauge.builder("ml.client.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .description("Free slots for concurrent ML calls")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        deadlines.shutdownNow();
+        httpClient.close();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    public Map<String, Object> postJson(String path, Object body) {
+        return call(path, null, () -> {
+            try {
+                return new ByteArrayEntity(objectMapper.writeValueAsBytes(body), ContentType.APPLICATION_JSON);
+            } catch (IOException e) {
+                throw new MlServiceException("Failed to encode ML request", e);
+            }
+        });
+    }
+
+    /**
+     * Posts the image as application/octet-stream, piping it from storage as the body is written.
+     */
+    public Map<String, Object> postImage(String path, ScanImage image) {
+        return call(path, image.scanId().toString(), () -> new EntityTemplate(
+                image.size() != null ? image.size() : -1, ContentType.APPLICATION_OCTET_STREAM, null,
+                out -> copy(image, out)));
+    }
+
+    /**
+     * Posts the images as multipart/form-data, one "images" part per scan named by its id.
+     */
+    public Map<String, Object> postImages(String path, List<ScanImage> images) {
+        return call(path, null, () -> {
+            MultipartEntityBuilder multipart = MultipartEntityBuilder.create();
+            for (ScanImage image : images) {
+                ContentType contentType = image.mimetype() != null
+                        ? ContentType.parse(image.mimetype())
+                        : ContentType.APPLICATION_OCTET_STREAM;
+                multipart.addPart("images", new AbstractContentBody(contentType) {
+                    @Override
+                    public String getFilename() {
+                        return image.scanId().toString();
+                    }
+
+                    @Override
+                    public long getContentLength() {
+                        return image.size() != null ? image.size() : -1;
+                    }
+
+                    @Override
+                    public void writeTo(OutputStream out) throws IOException {
+                        copy(image, out);
+                    }
+                });
+            }
+            return multipart.build();
+        });
+    }
+
+    private interface EntitySupplier {
+        HttpEntity get();
+    }
+
+    private Map<String, Object> call(String path, String scanId, EntitySupplier entity) {
+        if (!bulkhead.tryAcquire()) {
+            try {
+                if (!bulkhead.tryAcquire(config.getBulkheadWait().toNanos(), TimeUnit.NANOSECONDS)) {
+                    reject("bulkhead");
+                    throw new MlServiceException("Too many concurrent ML calls");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MlServiceException("Interrupted while waiting for an ML call slot", e);
+            }
+        }
+        try {
+            if (!circuitBreaker.tryAcquire()) {
+                reject("circuit_open");
+                throw new MlServiceException("ML service is unavailable (circuit open)");
+            }
+            return execute(path, scanId, entity);
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Runs a call the circuit breaker has let through. Every way out reports to the breaker, so a
+     * half-open probe is never left taken.
+     */
+    private Map<String, Object> execute(String path, String scanId, EntitySupplier entity) {
+        MlReplicaPool.Replica replica;
+        HttpPost request;
+        AtomicBoolean expired = new AtomicBoolean();
+        ScheduledFuture<?> deadline;
+        try {
+            replica = replicaPool.choose();
+            request = new HttpPost(replica.url(path));
+            if (scanId != null) {
+                request.setHeader(SCAN_ID_HEADER, scanId);
+            }
+            deadline = deadlines.schedule(() -> {
+                expired.set(true);
+                request.cancel();
+            }, config.getDeadline().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            // Nothing was sent, so this says nothing about the service
+            circuitBreaker.release();
+            throw e;
+        }
+        long start = System.nanoTime();
+        String outcome = "error";
+        replica.start();
+        try {
+            request.setEntity(entity.get());
+            Map<String, Object> result = httpClient.execute(request, response -> {
+                int status = response.getCode();
+                if (status >= 500) {
+                    throw new IOException("ML service responded " + status);
+                }
+                HttpEntity body = response.getEntity();
+                if (status >= 400) {
+                    // The service is up; the request itself was rejected
+                    throw new MlRequestRejected("ML service rejected the request with " + status);
+                }
+                if (body == null) {
+                    throw new IOException("ML service returned an empty response");
+                }
+                try (InputStream in = body.getContent()) {
+                    return objectMapper.readValue(in, new TypeReference<Map<String, Object>>() {
+                    });
+                }
+            });
+            circuitBreaker.onSuccess();
+            outcome = "success";
+            return result;
+        } catch (MlRequestRejected e) {
+            circuitBreaker.onSuccess();
+            outcome = "rejected";
+            throw new MlServiceException(e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            ScanReadFailed readFailure = scanReadFailure(e);
+            if (readFailure != null && !expired.get()) {
+                circuitBreaker.release();
+                outcome = "source_error";
+                throw new UncheckedIOException(readFailure.getMessage(), readFailure);
+            }
+            circuitBreaker.onFailure();
+            if (expired.get()) {
+                outcome = "deadline";
+                throw new MlServiceException("ML call exceeded its deadline of " + config.getDeadline(), e);
+            }
+            throw e instanceof MlServiceException mlException ? mlException
+                    : new MlServiceException("ML call failed: " + e.getMessage(), e);
+        } finally {
+            deadline.cancel(false);
+            long elapsed = System.nanoTime() - start;
+            replica.finish(elapsed, !outcome.equals("error") && !outcome.equals("deadline"));
+            Timer.builder("ml.client.requests")
+                    .description("Calls to the ML service")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void reject(String reason) {
+        Counter.builder("ml.client.rejected")
+                .description("Calls not attempted because of the bulkhead or circuit breaker")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Copies the image into the request body. Failures to read the image are told apart from
+     * failures to write to the service.
+     */
+    private static void copy(ScanImage image, OutputStream out) throws IOException {
+        InputStream in;
+        try {
+            in = image.open();
+        } catch (IOException | RuntimeException e) {
+            throw new ScanReadFailed(image, e);
+        }
+        try (in) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (true) {
+                int read;
+                try {
+                    read = in.read(buffer);
+                } catch (IOException | RuntimeException e) {
+                    throw new ScanReadFailed(image, e);
+                }
+                if (read < 0) {
+                    return;
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    // The HTTP client may wrap what the entity throws
+    private static ScanReadFailed scanReadFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ScanReadFailed failure) {
+                return failure;
+            }
+        }
+        return null;
+    }
+
+    private static class MlRequestRejected extends IOException {
+        MlRequestRejected(String message) {
+            super(message);
+        }
+    }
+
+    private static class ScanReadFailed extends IOException {
+        ScanReadFailed(ScanImage image, Exception cause) {
+            super("Failed to read scan " + image.scanId() + " for the ML call: " + cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.ecgcare.backend.ml;
+
+import com.ecgcare.backend.config.MlProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The configured ML service replicas. Each call goes to the less loaded of two randomly picked
+ * available replicas (power of two choices), by outstanding requests and then average latency.
+ * Replicas that fail health probes are skipped. Replicas that fail repeatedly, or are much
+ * slower than their peers, are ejected for a growing period. No more than
+ * {@code ml.pool.max-ejection-percent} of the replicas are ejected at once.
+ */
+@Component
+@Slf4j
+public class MlReplicaPool {
+    // Weight of the newest sample in the latency average
+    private static final double LATENCY_DECAY = 0.2;
+
+    private final MlProperties.Pool config;
+    private final List<Replica> replicas;
+    private final HttpClient probeClient;
+
+    public MlReplicaPool(MlProperties mlProperties, MeterRegistry meterRegistry) {
+        this.config = mlProperties.getPool();
+        if (mlProperties.getReplicas().isEmpty()) {
+            throw new IllegalStateException("ml.replicas must list at least one ML service URL");
+        }
+        this.replicas = mlProperties.getReplicas().stream()
+                .map(url -> new Replica(url.endsWith("/") ? url.substring(0, url.length() - 1) : url))
+                .toList();
+        this.probeClient = HttpClient.newBuilder()
+                .connectTimeout(config.getProbeTimeout())
+                .build();
+
+        for (Replica replica : replicas) {
+            Gauge.builder("ml.replica.outstanding", replica, r -> r.outstanding.get())
+                    .description("Requests in flight to the replica")
+                    .tag("replica", replica.baseUrl)
+                    .register(meterRegistry);
+            Gauge.builder("ml.replica.available", replica, r -> r.isAvailable(System.nanoTime()) ? 1 : 0)
+                    .description("Whether the replica receives traffic")
+                    .tag("replica", replica.baseUrl)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Picks the replica for the next call. When nothing is available every replica is a candidate,
+     * so traffic keeps flowing rather than failing outright.
+     */
+    public Replica choose() {
+        long now = System.nanoTime();
+        List<Replica> candidates = replicas.stream().filter(replica -> replica.isAvailable(now)).toList();
+        if (candidates.isEmpty()) {
+            candidates = replicas;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Replica a = candidates.get(first);
+        Replica b = candidates.get(second);
+        return LOAD.compare(a, b) <= 0 ? a : b;
+    }
+
+    List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    private static final Comparator<Replica> LOAD = Comparator
+            .comparingInt((Replica replica) -> replica.outstanding.get())
+            .thenComparingDouble(replica -> replica.latencyNanos);
+
+    /**
+     * Probes every replica's root route and ejects latency outliers.
+     */
+    @Scheduled(fixedDelayString = "${ml.pool.probe-interval:PT10S}", initialDelayString = "PT5S")
+    public void probe() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(replica.baseUrl + "/"))
+                        .timeout(config.getProbeTimeout())
+                        .GET()
+                        .build();
+                HttpResponse<Void> response = probeClient.send(request, HttpResponse.BodyHandlers.discarding());
+                healthy = response.statusCode() < 500;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                healthy = false;
+            }
+            if (healthy != replica.healthy) {
+                log.warn("ML replica {} is now {}", replica.baseUrl, healthy ? "healthy" : "unhealthy");
+            }
+            replica.healthy = healthy;
+        }
+        ejectSlowOutliers();
+    }
+
+    void ejectSlowOutliers() {
+        long now = System.nanoTime();
+        List<Replica> measured = new ArrayList<>(replicas.stream()
+                .filter(replica -> replica.latencyNanos > 0 && replica.isAvailable(now))
+                .toList());
+        if (measured.size() < 3) {
+            return;
+        }
+        measured.sort(Comparator.comparingDouble(replica -> replica.latencyNanos));
+        double median = measured.get(measured.size() / 2).latencyNanos;
+        double limit = Math.max(median * config.getSlowFactor(), config.getMinSlowLatency().toNanos());
+        for (int i = measured.size() - 1; i >= 0 && measured.get(i).latencyNanos > limit; i--) {
+            Replica replica = measured.get(i);
+            // Read before eject() resets the average
+            double latency = replica.latencyNanos;
+            if (eject(replica, now)) {
+                log.warn("Ejected slow ML replica {} (avg {} ms, median {} ms)", replica.baseUrl,
+                        (long) (latency / 1e6), (long) (median / 1e6));
+            }
+        }
+    }
+
+    private synchronized boolean eject(Replica replica, long now) {
+        long ejected = replicas.stream().filter(other -> other.ejectedUntil - now > 0).count();
+        if ((ejected + 1) * 100 > (long) replicas.size() * config.getMaxEjectionPercent()) {
+            return false;
+        }
+        replica.ejections++;
+        long duration = config.getEjectionDuration().toNanos() << Math.min(replica.ejections - 1, 10);
+        replica.ejectedUntil = now + Math.min(duration, config.getMaxEjectionDuration().toNanos());
+        replica.consecutiveFailures = 0;
+        // Start the next period with a fresh latency average
+        replica.latencyNanos = 0;
+        return true;
+    }
+
+    public final class Replica {
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile boolean healthy = true;
+        private volatile long ejectedUntil = System.nanoTime();
+        private volatile double latencyNanos;
+        private int consecutiveFailures;
+        private int ejections;
+
+        private Replica(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String url(String path) {
+            return baseUrl + path;
+        }
+
+        boolean isAvailable(long now) {
+            return healthy && now - ejectedUntil >= 0;
+        }
+
+        /**
+         * Marks a call to this replica as started; pair with {@link #finish}.
+         */
+        public void start() {
+            outstanding.incrementAndGet();
+        }
+
+        public void finish(long elapsedNanos, boolean success) {
+            outstanding.decrementAndGet();
+            synchronized (MlReplicaPool.this) {
+                latencyNanos = latencyNanos == 0
+                        ? elapsedNanos
+                        : latencyNanos + LATENCY_DECAY * (elapsedNanos - latencyNanos);
+                if (success) {
+                    consecutiveFailures = 0;
+                    long sinceEjection = System.nanoTime() - ejectedUntil;
+                    if (ejections > 0 && sinceEjection > config.getMaxEjectionDuration().toNanos()) {
+                        // Behaved for a while after its last ejection
+                        ejections = 0;
+                    }
+                    return;
+                }
+                int failures = ++consecutiveFailures;
+                if (failures >= config.getEjectAfterFailures() && eject(this, System.nanoTime())) {
+                    log.warn("Ejected ML replica {} after {} consecutive failures", baseUrl, failures);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.ecgcare.backend.ml;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import com.ecgcare.backend.config.MlProperties;
+import com.ecgcare.backend.exception.MlServiceException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an exported ONNX model on the CPU inside the JVM, for single-node deployments without the
+ * Python service. Serves only the model version it was configured with.
+ *
+ * <p>One session is shared, since ONNX Runtime sessions are thread-safe; concurrency is bounded by
+ * a pool of slots, each owning a preallocated input buffer and the tensor that wraps it, so no
+ * tensor memory is allocated per prediction.
+ */
+@Component
+@Order(1)
+@ConditionalOnProperty(prefix = "ml.onnx", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class OnnxInferenceEngine implements InferenceEngine {
+    static final int SIZE = 224;
+    private static final int PLANE = SIZE * SIZE;
+
+    private final MlProperties mlProperties;
+
+    private OrtEnvironment environment;
+    private OrtSession session;
+    private String inputName;
+    private BlockingQueue<Slot> slots;
+
+    private record Slot(FloatBuffer input, OnnxTensor tensor) {
+    }
+
+    @PostConstruct
+    void init() throws OrtException {
+        MlProperties.Onnx onnx = mlProperties.getOnnx();
+        environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            options.setIntraOpNumThreads(onnx.getIntraOpThreads());
+            session = environment.createSession(onnx.getModelPath(), options);
+        }
+        inputName = session.getInputNames().iterator().next();
+
+        slots = new ArrayBlockingQueue<>(onnx.getPoolSize());
+        long[] shape = {1, 3, SIZE, SIZE};
+        for (int i = 0; i < onnx.getPoolSize(); i++) {
+            // A direct buffer is wrapped by the tensor rather than copied, so refilling it is enough
+            FloatBuffer input = ByteBuffer.allocateDirect(3 * PLANE * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            slots.add(new Slot(input, OnnxTensor.createTensor(environment, input, shape)));
+        }
+        log.info("Loaded ONNX model {} as {} with {} slots", onnx.getModelPath(), onnx.getModelVersion(),
+                onnx.getPoolSize());
+    }
+
+    @PreDestroy
+    void close() throws OrtException {
+        if (slots != null) {
+            slots.forEach(slot -> slot.tensor().close());
+        }
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    @Override
+    public boolean supports(String modelVersion) {
+        return mlProperties.getOnnx().getModelVersion().equals(modelVersion);
+    }
+
+    @Override
+    public Prediction predict(ScanImage image) throws IOException {
+        BufferedImage decoded;
+        try (InputStream in = image.open()) {
+            decoded = ImageIO.read(in);
+        }
+        if (decoded == null) {
+            throw new IOException("Unsupported image format for scan " + image.scanId());
+        }
+
+        Slot slot = acquire();
+        try {
+            fill(slot.input(), decoded);
+            try (OrtSession.Result result = session.run(Map.of(inputName, slot.tensor()))) {
+                if (!(result.get(0).getValue() instanceof float[][] logits)) {
+                    throw new MlServiceException("ONNX model output is not a float[batch][classes] tensor");
+                }
+                return toPrediction(logits[0]);
+            }
+        } catch (OrtException e) {
+            throw new MlServiceException("ONNX inference failed: " + e.getMessage(), e);
+        } finally {
+            slots.add(slot);
+        }
+    }
+
+    private Slot acquire() {
+        try {
+            Slot slot = slots.poll(mlProperties.getOnnx().getAcquireTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            if (slot == null) {
+                throw new MlServiceException("No ONNX session slot available");
+            }
+            return slot;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MlServiceException("Interrupted while waiting for an ONNX session slot", e);
+        }
+    }
+
+    /**
+     * Resizes the image to the model's input and writes it as normalized CHW floats, matching the
+     * ViT processor used by the Python service (rescale to [0, 1], mean and std 0.5).
+     */
+    static void fill(FloatBuffer input, BufferedImage image) {
+        BufferedImage resized = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resized.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, SIZE, SIZE, null);
+        } finally {
+            g.dispose();
+        }
+
+        int[] rgb = resized.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE);
+        for (int i = 0; i < PLANE; i++) {
+            int pixel = rgb[i];
+            input.put(i, ((pixel >> 16) & 0xff) / 127.5f - 1f);
+            input.put(PLANE + i, ((pixel >> 8) & 0xff) / 127.5f - 1f);
+            input.put(2 * PLANE + i, (pixel & 0xff) / 127.5f - 1f);
+        }
+    }
+
+    /**
+     * Same mapping as the Python service: the arg max's parity picks the (simulated) CHD label and
+     * its softmax probability is the confidence.
+     */
+    static Prediction toPrediction(float[] logits) {
+        int best = 0;
+        for (int i = 1; i < logits.length; i++) {
+            if (logits[i] > logits[best]) {
+                best = i;
+            }
+        }
+        double sum = 0;
+        for (float logit : logits) {
+            sum += Math.exp(logit - logits[best]);
+        }
+        return Prediction.of(best % 2 == 0 ? "ASD" : "VSD", 1.0 / sum);
+    }
+}
@@ -0,0 +1,44 @@
+package com.ecgcare.backend.ml;
+
+import com.ecgcare.backend.entity.MlResult;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The model's output for one image.
+ */
+public record Prediction(String predictedLabel, double confidenceScore, Map<String, Object> classProbs) {
+
+    /**
+     * Builds the prediction for a label; the other class gets the remaining probability.
+     */
+    public static Prediction of(String predictedLabel, double confidenceScore) {
+        Map<String, Object> classProbs = new HashMap<>();
+        classProbs.put("ASD", predictedLabel.equals("ASD") ? confidenceScore : 1.0 - confidenceScore);
+        classProbs.put("VSD", predictedLabel.equals("VSD") ? confidenceScore : 1.0 - confidenceScore);
+        return new Prediction(predictedLabel, confidenceScore, classProbs);
+    }
+
+    /**
+     * Reads one prediction from the ML service's response format.
+     */
+    public static Prediction from(Map<?, ?> response) {
+        if ("FAILED".equals(response.get("status"))) {
+            throw new RuntimeException("ML service failed: " + response.get("error"));
+        }
+        String predictedLabel = (String) response.get("prediction");
+        Object confidenceObj = response.get("confidence_score");
+        double confidenceScore = confidenceObj instanceof Number number
+                ? number.doubleValue()
+                : Double.parseDouble(confidenceObj.toString());
+        return of(predictedLabel, confidenceScore);
+    }
+
+    public static Prediction of(MlResult result) {
+        Object confidence = result.getClassProbs().get(result.getPredictedLabel());
+        return new Prediction(result.getPredictedLabel(),
+                confidence instanceof Number number ? number.doubleValue() : 0.0,
+                result.getClassProbs());
+    }
+}
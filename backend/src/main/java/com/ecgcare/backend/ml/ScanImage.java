@@ -0,0 +1,29 @@
+package com.ecgcare.backend.ml;
+
+import com.ecgcare.backend.service.ScanBlobService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * A scan image to send to the ML service, opened only when the request body is written.
+ */
+public record ScanImage(UUID scanId, Long size, String mimetype, ScanBlobService.BlobSource source) {
+    public InputStream open() throws IOException {
+        try {
+            return source.open();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to open scan " + scanId, e);
+        }
+    }
+
+    public String base64() throws IOException {
+        try (InputStream in = open()) {
+            return Base64.getEncoder().encodeToString(in.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ecgcare.backend.repository;
+
+import com.ecgcare.backend.entity.BlobDeletion;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BlobDeletionRepository extends JpaRepository<BlobDeletion, Long> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM BlobDeletion d WHERE d.nextAttemptAt <= :now ORDER BY d.nextAttemptAt")
+    List<BlobDeletion> findDueForUpdate(@Param("now") OffsetDateTime now, Pageable pageable);
+
+    @Query("SELECT d.objectKey FROM BlobDeletion d WHERE d.objectKey IN :objectKeys")
+    List<String> findPendingObjectKeys(@Param("objectKeys") Collection<String> objectKeys);
+
+    @Modifying
+    @Query("DELETE FROM BlobDeletion d WHERE d.objectKey = :objectKey")
+    int deleteByObjectKey(@Param("objectKey") String objectKey);
+}
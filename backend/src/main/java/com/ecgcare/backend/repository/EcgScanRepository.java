@@ -8,12 +8,30 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface EcgScanRepository extends JpaRepository<EcgScan, UUID> {
     @Query("SELECT s FROM EcgScan s WHERE s.patient.patientId = :patientId ORDER BY s.uploadedAt DESC")
     Page<EcgScan> findByPatientId(@Param("patientId") UUID patientId, Pageable pageable);
+
+    @Query("SELECT s FROM EcgScan s WHERE s.patient.patientId = :patientId AND s.scanId > :afterScanId ORDER BY s.scanId")
+    List<EcgScan> findByPatientIdAfter(@Param("patientId") UUID patientId, @Param("afterScanId") UUID afterScanId,
+            Pageable pageable);
+
+    @Query("SELECT s FROM EcgScan s WHERE s.scanId > :afterScanId ORDER BY s.scanId")
+    List<EcgScan> findAllAfter(@Param("afterScanId") UUID afterScanId, Pageable pageable);
+
+    @Query("SELECT COUNT(s) FROM EcgScan s WHERE s.scanId > :afterScanId")
+    long countAfter(@Param("afterScanId") UUID afterScanId);
+
+    @Query("SELECT s FROM EcgScan s WHERE s.patient.patientId = :patientId")
+    List<EcgScan> findAllByPatientId(@Param("patientId") UUID patientId);
+
+    @Query("SELECT s.storageUri FROM EcgScan s WHERE s.storageUri IN :storageUris")
+    List<String> findExistingStorageUris(@Param("storageUris") Collection<String> storageUris);
 }
 
 
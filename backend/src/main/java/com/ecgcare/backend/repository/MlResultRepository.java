@@ -8,15 +8,29 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface MlResultRepository extends JpaRepository<MlResult, UUID> {
     @Query("SELECT m FROM MlResult m WHERE m.patient.patientId = :patientId ORDER BY m.createdAt DESC")
     Page<MlResult> findByPatientId(@Param("patientId") UUID patientId, Pageable pageable);
-}
-
 
+    @Query("SELECT m FROM MlResult m WHERE m.patient.patientId = :patientId AND m.resultId > :afterResultId ORDER BY m.resultId")
+    List<MlResult> findByPatientIdAfter(@Param("patientId") UUID patientId,
+            @Param("afterResultId") UUID afterResultId, Pageable pageable);
 
+    Optional<MlResult> findFirstByChecksumAndModelVersionOrderByCreatedAtDesc(String checksum, String modelVersion);
 
+    @Query("SELECT m FROM MlResult m WHERE m.scan.scanId = :scanId AND m.modelVersion = :modelVersion " +
+            "AND m.threshold = :threshold ORDER BY m.createdAt DESC")
+    List<MlResult> findByScanIdAndModel(@Param("scanId") UUID scanId, @Param("modelVersion") String modelVersion,
+            @Param("threshold") BigDecimal threshold, Pageable pageable);
 
+    @Query("SELECT COUNT(m) > 0 FROM MlResult m WHERE m.scan.scanId = :scanId AND m.modelVersion = :modelVersion " +
+            "AND m.threshold = :threshold")
+    boolean existsByScanIdAndModel(@Param("scanId") UUID scanId, @Param("modelVersion") String modelVersion,
+            @Param("threshold") BigDecimal threshold);
+}
@@ -0,0 +1,74 @@
+package com.ecgcare.backend.repository;
+
+import com.ecgcare.backend.entity.PredictionJob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface PredictionJobRepository extends JpaRepository<PredictionJob, UUID> {
+    /**
+     * Requested jobs come before background ones, which are only returned when
+     * {@code includeBackground} is set.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT j FROM PredictionJob j WHERE " +
+            "((j.status = com.ecgcare.backend.entity.PredictionJob.JobStatus.queued AND j.nextAttemptAt <= :now) " +
+            "OR (j.status = com.ecgcare.backend.entity.PredictionJob.JobStatus.running AND j.lockedUntil < :now)) " +
+            "AND (:includeBackground = true OR j.background = false) " +
+            "ORDER BY j.background, j.nextAttemptAt")
+    List<PredictionJob> findDueForUpdate(@Param("now") OffsetDateTime now,
+            @Param("includeBackground") boolean includeBackground, Pageable pageable);
+
+    Optional<PredictionJob> findByDedupKey(String dedupKey);
+
+    /**
+     * Locks the in-flight job for the prediction, so a request joining it and the worker finishing
+     * it do not overwrite each other.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT j FROM PredictionJob j WHERE j.dedupKey = :dedupKey")
+    Optional<PredictionJob> findByDedupKeyForUpdate(@Param("dedupKey") String dedupKey);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT j FROM PredictionJob j WHERE j.jobId = :jobId")
+    Optional<PredictionJob> findByIdForUpdate(@Param("jobId") UUID jobId);
+
+    /**
+     * Inserts the queued job unless another in-flight job holds its dedup key; returns 0 in that
+     * case. A concurrent uncommitted insert of the same key is waited for.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO prediction_job (job_id, scan_id, patient_id, requested_by, model_version, threshold, "
+            + "force, background, rescore_run_id, dedup_key, status, attempts, next_attempt_at, created_at, "
+            + "updated_at) VALUES (:#{#job.jobId.toString()}, :#{#job.scanId.toString()}, "
+            + ":#{#job.patientId.toString()}, :#{#job.requestedBy.toString()}, :#{#job.modelVersion}, "
+            + ":#{#job.threshold}, :#{#job.force}, :#{#job.background}, :#{#job.rescoreRunId?.toString()}, "
+            + ":#{#job.dedupKey}, :#{#job.status.name()}, :#{#job.attempts}, :#{#job.nextAttemptAt}, "
+            + ":#{#job.createdAt}, :#{#job.updatedAt}) ON CONFLICT DO NOTHING",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("job") PredictionJob job);
+
+    long countByRescoreRunIdAndStatusIn(UUID rescoreRunId, Collection<PredictionJob.JobStatus> statuses);
+
+    long countByRescoreRunIdAndStatusInAndUpdatedAtAfter(UUID rescoreRunId,
+            Collection<PredictionJob.JobStatus> statuses, OffsetDateTime updatedAfter);
+
+    @Modifying
+    @Query("UPDATE PredictionJob j SET j.status = com.ecgcare.backend.entity.PredictionJob.JobStatus.failed, " +
+            "j.dedupKey = null, j.lastError = :error, j.updatedAt = :now WHERE j.rescoreRunId = :runId " +
+            "AND j.status = com.ecgcare.backend.entity.PredictionJob.JobStatus.queued")
+    int failQueuedByRescoreRunId(@Param("runId") UUID runId, @Param("error") String error,
+            @Param("now") OffsetDateTime now);
+}
@@ -0,0 +1,28 @@
+package com.ecgcare.backend.repository;
+
+import com.ecgcare.backend.entity.RescoreRun;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface RescoreRunRepository extends JpaRepository<RescoreRun, UUID> {
+    @Query("SELECT r.runId FROM RescoreRun r WHERE r.status = com.ecgcare.backend.entity.RescoreRun.RunStatus.running " +
+            "ORDER BY r.createdAt")
+    List<UUID> findRunningIds();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM RescoreRun r WHERE r.runId = :runId")
+    Optional<RescoreRun> findByIdForUpdate(@Param("runId") UUID runId);
+
+    boolean existsByModelVersionAndThresholdAndStatus(String modelVersion, BigDecimal threshold,
+            RescoreRun.RunStatus status);
+}
@@ -0,0 +1,43 @@
+package com.ecgcare.backend.repository;
+
+import com.ecgcare.backend.entity.ScanBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ScanBlobRepository extends JpaRepository<ScanBlob, String> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM ScanBlob b WHERE b.checksum = :checksum")
+    Optional<ScanBlob> findByChecksumForUpdate(@Param("checksum") String checksum);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM ScanBlob b WHERE b.objectKey = :objectKey")
+    Optional<ScanBlob> findByObjectKeyForUpdate(@Param("objectKey") String objectKey);
+
+    Optional<ScanBlob> findByObjectKey(String objectKey);
+
+    /**
+     * Inserts the row unless one with the same checksum exists; returns 0 in that case. A concurrent
+     * uncommitted insert of the same checksum is waited for.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO scan_blob (checksum, object_key, size_bytes, mimetype, ref_count, wrapping_scheme, "
+            + "dek_enc, dek_iv, dek_tag, dek_id, created_at) VALUES (:#{#blob.checksum}, :#{#blob.objectKey}, "
+            + ":#{#blob.sizeBytes}, :#{#blob.mimetype}, :#{#blob.refCount}, :#{#blob.wrappingScheme}, "
+            + ":#{#blob.dekEnc}, :#{#blob.dekIv}, :#{#blob.dekTag}, :#{#blob.dekId}, "
+            + ":#{#blob.createdAt}) ON CONFLICT DO NOTHING",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("blob") ScanBlob blob);
+
+    @Query("SELECT b.objectKey FROM ScanBlob b WHERE b.objectKey IN :objectKeys")
+    List<String> findExistingObjectKeys(@Param("objectKeys") Collection<String> objectKeys);
+}
@@ -0,0 +1,17 @@
+package com.ecgcare.backend.repository;
+
+import com.ecgcare.backend.entity.UploadPart;
+import com.ecgcare.backend.entity.UploadPartId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface UploadPartRepository extends JpaRepository<UploadPart, UploadPartId> {
+    @Query("SELECT p FROM UploadPart p WHERE p.uploadSession.uploadId = :uploadId ORDER BY p.partNumber")
+    List<UploadPart> findByUploadId(@Param("uploadId") UUID uploadId);
+}
@@ -0,0 +1,25 @@
+package com.ecgcare.backend.repository;
+
+import com.ecgcare.backend.entity.UploadSession;
+import com.ecgcare.backend.entity.UploadSession.UploadStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM UploadSession u WHERE u.uploadId = :uploadId")
+    Optional<UploadSession> findByIdForUpdate(@Param("uploadId") UUID uploadId);
+
+    List<UploadSession> findByStatusInAndExpiresAtBefore(Collection<UploadStatus> statuses, OffsetDateTime time);
+}
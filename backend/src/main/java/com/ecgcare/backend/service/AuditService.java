@@ -6,9 +6,13 @@ import com.ecgcare.backend.entity.Session;
 import com.ecgcare.backend.repository.AuditLogRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -17,6 +21,7 @@ import java.util.UUID;
 @Slf4j
 public class AuditService {
     private final AuditLogRepository auditLogRepository;
+    private final JdbcTemplate jdbcTemplate;
 
     @Transactional
     public void logAction(String action, String entityType, UUID entityId, UUID doctorId, UUID sessionId,
@@ -46,9 +51,27 @@ public class AuditService {
             log.error("Failed to log audit action: {}", action, e);
         }
     }
-}
-
-
-
-
 
+    /**
+     * Writes one audit row per entity in a single JDBC batch, for bulk operations.
+     */
+    @Transactional
+    public void logActions(String action, String entityType, List<UUID> entityIds, UUID doctorId) {
+        try {
+            Timestamp now = Timestamp.from(Instant.now());
+            jdbcTemplate.batchUpdate(
+                    "insert into audit_log (doctor_id, action, entity_type, entity_id, created_at) values (?, ?, ?, ?, ?)",
+                    entityIds,
+                    entityIds.size(),
+                    (ps, entityId) -> {
+                        ps.setString(1, doctorId != null ? doctorId.toString() : null);
+                        ps.setString(2, action);
+                        ps.setString(3, entityType);
+                        ps.setString(4, entityId.toString());
+                        ps.setTimestamp(5, now);
+                    });
+        } catch (Exception e) {
+            log.error("Failed to log audit actions: {} x{}", action, entityIds.size(), e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.ecgcare.backend.service;
 
 import com.ecgcare.backend.config.JwtService;
 import com.ecgcare.backend.dto.request.LoginRequest;
+import com.ecgcare.backend.dto.request.PreferencesRequest;
 import com.ecgcare.backend.dto.request.RegisterRequest;
 import com.ecgcare.backend.dto.response.AuthResponse;
 import com.ecgcare.backend.dto.response.DoctorResponse;
@@ -174,7 +175,22 @@ public class AuthService {
                 .phone(doctor.getPhone())
                 .isActive(doctor.getIsActive())
                 .mfaEnabled(doctorAuth != null && doctorAuth.getMfaEnabled())
+                .eagerInference(doctor.getEagerInference())
                 .createdAt(doctor.getCreatedAt())
                 .build();
     }
+
+    @Transactional
+    public DoctorResponse updatePreferences(UUID doctorId, PreferencesRequest request) {
+        Doctor doctor = doctorRepository.findById(doctorId)
+                .orElseThrow(() -> new BadRequestException("Doctor not found"));
+
+        if (request.getEagerInference() != null) {
+            doctor.setEagerInference(request.getEagerInference());
+        }
+        doctorRepository.save(doctor);
+
+        auditService.logAction("update", "doctor", doctorId, doctorId, null, null);
+        return getCurrentUser(doctorId);
+    }
 }
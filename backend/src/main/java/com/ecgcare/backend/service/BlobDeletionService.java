@@ -0,0 +1,158 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.ScanProperties;
+import com.ecgcare.backend.entity.BlobDeletion;
+import com.ecgcare.backend.repository.BlobDeletionRepository;
+import com.ecgcare.backend.repository.EcgScanRepository;
+import com.ecgcare.backend.repository.ScanBlobRepository;
+import com.ecgcare.backend.storage.ScanStorage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Drains the blob deletion outbox into object storage and periodically reconciles the store against
+ * the database so objects orphaned by failures outside the outbox are eventually removed too.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BlobDeletionService {
+    private final BlobDeletionRepository blobDeletionRepository;
+    private final ScanBlobRepository scanBlobRepository;
+    private final EcgScanRepository scanRepository;
+    private final ScanBlobService scanBlobService;
+    private final ScanProperties scanProperties;
+    private final TransactionTemplate transactionTemplate;
+
+    // Part objects of resumable uploads are cleaned up with their sessions
+    private static final String UPLOAD_PREFIX = "uploads/";
+
+    @Scheduled(fixedDelayString = "${scans.deletion.interval:PT30S}", initialDelayString = "PT10S")
+    public void drain() {
+        int batchSize = scanProperties.getDeletion().getBatchSize();
+        Integer processed;
+        do {
+            processed = transactionTemplate.execute(status -> drainBatch(batchSize));
+        } while (processed != null && processed == batchSize);
+    }
+
+    /**
+     * Removes one batch of due deletions. Entries stay locked until the batch commits, so an upload
+     * that re-creates the same content waits instead of racing the removal.
+     */
+    private int drainBatch(int batchSize) {
+        OffsetDateTime now = OffsetDateTime.now();
+        List<BlobDeletion> batch = blobDeletionRepository.findDueForUpdate(now, PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, String> failures = scanBlobService.removeObjects(
+                batch.stream().map(BlobDeletion::getObjectKey).distinct().toList());
+
+        List<BlobDeletion> done = new ArrayList<>();
+        for (BlobDeletion deletion : batch) {
+            String error = failures.get(deletion.getObjectKey());
+            if (error == null) {
+                scanBlobService.evict(deletion.getObjectKey());
+                done.add(deletion);
+                continue;
+            }
+            int attempts = deletion.getAttempts() + 1;
+            deletion.setAttempts(attempts);
+            deletion.setLastError(error.length() > 1000 ? error.substring(0, 1000) : error);
+            deletion.setNextAttemptAt(now.plus(retryDelay(attempts)));
+            log.warn("Deleting {} failed (attempt {}), retrying at {}", deletion.getObjectKey(), attempts,
+                    deletion.getNextAttemptAt());
+        }
+        blobDeletionRepository.deleteAll(done);
+        blobDeletionRepository.saveAll(batch.stream().filter(deletion -> !done.contains(deletion)).toList());
+        return batch.size();
+    }
+
+    private Duration retryDelay(int attempts) {
+        ScanProperties.Deletion config = scanProperties.getDeletion();
+        Duration delay = config.getRetryBaseDelay().multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(config.getRetryMaxDelay()) > 0 ? config.getRetryMaxDelay() : delay;
+    }
+
+    /**
+     * Streams the bucket listing and queues objects that no scan or blob row references.
+     */
+    @Scheduled(fixedDelayString = "${scans.reconcile.interval:PT24H}", initialDelayString = "${scans.reconcile.initial-delay:PT10M}")
+    public void reconcile() {
+        ScanProperties.Reconcile config = scanProperties.getReconcile();
+        if (!config.isEnabled()) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(config.getOrphanGrace());
+        long listed = 0;
+        long orphans = 0;
+        List<String> page = new ArrayList<>();
+        try (Stream<ScanStorage.StoredObject> objects = scanBlobService.listObjects("")) {
+            for (Iterator<ScanStorage.StoredObject> it = objects.iterator(); it.hasNext(); ) {
+                ScanStorage.StoredObject object = it.next();
+                listed++;
+                if (object.key().startsWith(UPLOAD_PREFIX) || object.lastModified().isAfter(cutoff)) {
+                    continue;
+                }
+                page.add(object.key());
+                if (page.size() >= config.getPageSize()) {
+                    orphans += queueOrphans(page);
+                    page.clear();
+                }
+            }
+            if (!page.isEmpty()) {
+                orphans += queueOrphans(page);
+            }
+            log.info("Reconciled {} objects, queued {} orphans for deletion", listed, orphans);
+        } catch (Exception e) {
+            log.error("Object store reconciliation failed after {} objects", listed, e);
+        }
+    }
+
+    private int queueOrphans(List<String> objectKeys) {
+        // Derivatives are live while the object they were made from is
+        Set<String> candidates = new HashSet<>(objectKeys);
+        for (String objectKey : objectKeys) {
+            String parent = scanBlobService.derivativeParent(objectKey);
+            if (parent != null) {
+                candidates.add(parent);
+            }
+        }
+
+        Integer queued = transactionTemplate.execute(status -> {
+            Set<String> live = new HashSet<>(scanBlobRepository.findExistingObjectKeys(candidates));
+            live.addAll(scanRepository.findExistingStorageUris(candidates));
+            Set<String> pending = new HashSet<>(blobDeletionRepository.findPendingObjectKeys(objectKeys));
+
+            List<BlobDeletion> orphans = objectKeys.stream()
+                    .filter(objectKey -> !live.contains(objectKey) && !pending.contains(objectKey))
+                    .filter(objectKey -> {
+                        String parent = scanBlobService.derivativeParent(objectKey);
+                        return parent == null || !live.contains(parent);
+                    })
+                    .map(objectKey -> BlobDeletion.builder().objectKey(objectKey).build())
+                    .toList();
+            orphans.forEach(orphan -> log.info("Queueing orphaned object {}", orphan.getObjectKey()));
+            blobDeletionRepository.saveAll(orphans);
+            return orphans.size();
+        });
+        return queued != null ? queued : 0;
+    }
+}
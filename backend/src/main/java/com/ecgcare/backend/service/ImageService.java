@@ -0,0 +1,191 @@
+package com.ecgcare.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Image decoding, scaling and encoding shared by the scan pipelines.
+ */
+@Service
+@Slf4j
+public class ImageService {
+
+    /**
+     * The image itself cannot be decoded, as opposed to the stream it is read from failing.
+     */
+    public static class UndecodableImageException extends IOException {
+        public UndecodableImageException(String message) {
+            super(message);
+        }
+
+        public UndecodableImageException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Decodes the image so that its longer side is at most {@code maxDimension}. Large sources are
+     * subsampled by the decoder, so the full-resolution raster is never materialized.
+     */
+    public BufferedImage readScaled(InputStream in, int maxDimension) throws IOException {
+        return scale(readSubsampled(in, maxDimension, false), maxDimension);
+    }
+
+    /**
+     * Decodes the image scaled to exactly {@code size} x {@code size}, the way image models take
+     * their input: either center-cropped to a square first, or stretched. Large sources are
+     * subsampled by the decoder as in {@link #readScaled}.
+     */
+    public BufferedImage readSquare(InputStream in, int size, boolean crop) throws IOException {
+        BufferedImage decoded = readSubsampled(in, size, true);
+        if (!crop) {
+            return draw(decoded, size, size, 0, 0, size, size);
+        }
+        double factor = (double) size / Math.min(decoded.getWidth(), decoded.getHeight());
+        int width = Math.max(size, (int) Math.round(decoded.getWidth() * factor));
+        int height = Math.max(size, (int) Math.round(decoded.getHeight() * factor));
+        return draw(decoded, size, size, (size - width) / 2, (size - height) / 2, width, height);
+    }
+
+    /**
+     * Subsamples to no less than twice the target, measured on the longer side or, for square outputs,
+     * the shorter one; callers scale smoothly the rest of the way.
+     */
+    private BufferedImage readSubsampled(InputStream in, int target, boolean shorterSide) throws IOException {
+        try (ImageInputStream imageInput = ImageIO.createImageInputStream(in)) {
+            ImageReader reader = reader(imageInput);
+            try {
+                reader.setInput(imageInput, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                int side = shorterSide ? Math.min(width, height) : Math.max(width, height);
+                int subsampling = Math.max(1, side / (target * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } catch (IIOException e) {
+                throw new UndecodableImageException(e.getMessage(), e);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decodes a single-page image at full resolution, refusing images above {@code maxPixels} before
+     * the raster is allocated. Multi-page images (such as multi-page TIFFs) are refused rather than
+     * reduced to their first page.
+     */
+    public BufferedImage read(InputStream in, long maxPixels) throws IOException {
+        try (ImageInputStream imageInput = ImageIO.createImageInputStream(in)) {
+            ImageReader reader = reader(imageInput);
+            try {
+                // Counting pages needs a seekable input
+                reader.setInput(imageInput, false, true);
+                int pages = reader.getNumImages(true);
+                if (pages != 1) {
+                    throw new UndecodableImageException("Image has " + pages + " pages");
+                }
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    throw new UndecodableImageException("Image too large to decode (" + pixels + " pixels)");
+                }
+                return reader.read(0);
+            } catch (IIOException e) {
+                throw new UndecodableImageException(e.getMessage(), e);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    public BufferedImage scale(BufferedImage source, int maxDimension) {
+        double factor = Math.min(1.0, (double) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * factor));
+
+        return draw(source, width, height, 0, 0, width, height);
+    }
+
+    private BufferedImage draw(BufferedImage source, int canvasWidth, int canvasHeight, int x, int y, int width,
+            int height) {
+        BufferedImage scaled = new BufferedImage(canvasWidth, canvasHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // Transparent areas are flattened onto white, as on a printed ECG
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, canvasWidth, canvasHeight);
+            graphics.drawImage(source, x, y, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    public byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOutput);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a PNG at the highest compression level. No metadata is written.
+     */
+    public void writePng(BufferedImage image, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOutput);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                // For PNG, quality 0 selects the strongest deflate level; the result is still lossless
+                param.setCompressionQuality(0.0f);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private ImageReader reader(ImageInputStream imageInput) throws IOException {
+        if (imageInput == null) {
+            throw new UndecodableImageException("Unreadable image");
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+        if (!readers.hasNext()) {
+            throw new UndecodableImageException("Unsupported image format");
+        }
+        return readers.next();
+    }
+}
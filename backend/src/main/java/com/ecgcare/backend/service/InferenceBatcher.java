@@ -0,0 +1,322 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.MlProperties;
+import com.ecgcare.backend.ml.MlClient;
+import com.ecgcare.backend.ml.Prediction;
+import com.ecgcare.backend.ml.ScanImage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Groups concurrent inference requests into batch calls to the ML service. A batch is sent when
+ * it reaches {@code ml.batch.max-size} or its first request has waited {@code ml.batch.max-delay}.
+ * While every batch slot is busy, requests keep queueing, so batches grow with the load. A request
+ * whose image cannot be read fails on its own; the rest of its batch is still sent.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InferenceBatcher {
+    private final MlClient mlClient;
+    private final MlProperties mlProperties;
+    private final MeterRegistry meterRegistry;
+
+    private record Pending(ScanImage image, CompletableFuture<Prediction> result,
+            long queuedAt) {
+    }
+
+    private BlockingQueue<Pending> queue;
+    private Semaphore batchSlots;
+    private ExecutorService senders;
+    private Thread collector;
+    private volatile boolean running;
+
+    private DistributionSummary batchSize;
+    private Timer queueWait;
+
+    @PostConstruct
+    void init() {
+        MlProperties.Batch config = mlProperties.getBatch();
+        queue = new LinkedBlockingQueue<>(config.getQueueCapacity());
+        batchSlots = new Semaphore(config.getMaxConcurrentBatches());
+        AtomicInteger threadCount = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(config.getMaxConcurrentBatches(), runnable -> {
+            Thread thread = new Thread(runnable, "ml-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        batchSize = DistributionSummary.builder("ml.batch.size")
+                .description("Images per batch sent to the ML service")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        queueWait = Timer.builder("ml.batch.queue.wait")
+                .description("Time a request waited for its batch to be sent")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        if (!config.isEnabled()) {
+            return;
+        }
+        running = true;
+        collector = new Thread(this::collect, "ml-batch-collector");
+        collector.setDaemon(true);
+        collector.start();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        if (collector != null) {
+            collector.interrupt();
+        }
+        senders.shutdown();
+        List<Pending> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        abandoned.forEach(pending -> pending.result().completeExceptionally(
+                new IllegalStateException("ML batcher is shutting down")));
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * Queues one image; the future completes when its batch returns.
+     */
+    public CompletableFuture<Prediction> submit(ScanImage image) {
+        Pending pending = new Pending(image, new CompletableFuture<>(), System.nanoTime());
+        if (!running || !queue.offer(pending)) {
+            pending.result().completeExceptionally(new IllegalStateException("ML batch queue is full"));
+        }
+        return pending.result();
+    }
+
+    private void collect() {
+        MlProperties.Batch config = mlProperties.getBatch();
+        while (running) {
+            try {
+                // Waiting for a free slot first lets requests pile up into a fuller batch
+                batchSlots.acquire();
+                List<Pending> batch = new ArrayList<>(config.getMaxSize());
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + config.getMaxDelay().toNanos();
+                while (batch.size() < config.getMaxSize()) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                try {
+                    senders.execute(() -> {
+                        try {
+                            send(batch);
+                        } finally {
+                            batchSlots.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    batchSlots.release();
+                    batch.forEach(pending -> pending.result().completeExceptionally(e));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        long sentAt = System.nanoTime();
+        batchSize.record(batch.size());
+        batch.forEach(pending -> queueWait.record(sentAt - pending.queuedAt(), TimeUnit.NANOSECONDS));
+
+        String outcome = "success";
+        try {
+            List<Pending> remaining = batch;
+            while (!remaining.isEmpty()) {
+                // Images are read before the call, so one that cannot be read fails only its own request
+                Outgoing outgoing = mlProperties.getTransport() == MlProperties.Transport.binary
+                        ? openImages(remaining)
+                        : encodeImages(remaining);
+                if (outgoing.requests().size() < remaining.size()) {
+                    outcome = "partial";
+                }
+                try {
+                    if (outgoing.requests().isEmpty()) {
+                        break;
+                    }
+                    if (!complete(outgoing.requests(), post(outgoing))) {
+                        outcome = "partial";
+                    }
+                    break;
+                } catch (UncheckedIOException e) {
+                    if (outgoing.unreadable().isEmpty()) {
+                        throw e;
+                    }
+                    // An image failed part way through; send the others again without it
+                    outcome = "partial";
+                    outgoing.unreadable().forEach(pending -> fail(pending, e));
+                    remaining = outgoing.requests().stream()
+                            .filter(pending -> !outgoing.unreadable().contains(pending))
+                            .toList();
+                } finally {
+                    outgoing.close();
+                }
+            }
+        } catch (Exception e) {
+            outcome = "error";
+            log.warn("Batch of {} predictions failed", batch.size(), e);
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        } finally {
+            Timer.builder("ml.batch.latency")
+                    .description("Round trip of one batch call to the ML service")
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Map<String, Object> post(Outgoing outgoing) {
+        String path = mlProperties.getBatch().getPath();
+        return outgoing.images() != null
+                ? mlClient.postImages(path, outgoing.images())
+                : mlClient.postJson(path, Map.of("items", outgoing.items()));
+    }
+
+    /**
+     * Completes each request with its item of the response. Returns false when some items failed.
+     */
+    private boolean complete(List<Pending> requests, Map<String, Object> response) {
+        Object results = response != null ? response.get("results") : null;
+        if (!(results instanceof List<?> list) || list.size() != requests.size()) {
+            throw new IllegalStateException("ML service returned a malformed batch response");
+        }
+        boolean allSucceeded = true;
+        // Results come back in request order
+        for (int i = 0; i < requests.size(); i++) {
+            CompletableFuture<Prediction> result = requests.get(i).result();
+            try {
+                if (!(list.get(i) instanceof Map<?, ?> item)) {
+                    throw new IllegalStateException("ML service returned a malformed batch result");
+                }
+                result.complete(Prediction.from(item));
+            } catch (RuntimeException e) {
+                allSucceeded = false;
+                result.completeExceptionally(e);
+            }
+        }
+        return allSucceeded;
+    }
+
+    private void fail(Pending pending, Exception e) {
+        log.warn("Failed to read scan {} for batch inference", pending.image().scanId(), e);
+        pending.result().completeExceptionally(e);
+    }
+
+    /**
+     * The requests of one call, with their images opened for the binary transport or encoded for
+     * the JSON one. Requests whose image fails while the body is written are collected in
+     * {@code unreadable}.
+     */
+    private record Outgoing(List<Pending> requests, List<ScanImage> images, List<Map<String, Object>> items,
+            List<InputStream> opened, Set<Pending> unreadable) {
+        void close() {
+            for (InputStream in : opened) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    log.debug("Failed to close scan image", e);
+                }
+            }
+        }
+    }
+
+    private Outgoing openImages(List<Pending> batch) {
+        List<Pending> requests = new ArrayList<>(batch.size());
+        List<ScanImage> images = new ArrayList<>(batch.size());
+        List<InputStream> opened = new ArrayList<>(batch.size());
+        Set<Pending> unreadable = ConcurrentHashMap.newKeySet();
+        for (Pending pending : batch) {
+            ScanImage image = pending.image();
+            InputStream in;
+            try {
+                in = image.open();
+            } catch (IOException | RuntimeException e) {
+                fail(pending, e);
+                continue;
+            }
+            requests.add(pending);
+            opened.add(in);
+            InputStream tracked = new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    try {
+                        return super.read();
+                    } catch (IOException | RuntimeException e) {
+                        unreadable.add(pending);
+                        throw e;
+                    }
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    try {
+                        return super.read(buffer, offset, length);
+                    } catch (IOException | RuntimeException e) {
+                        unreadable.add(pending);
+                        throw e;
+                    }
+                }
+            };
+            images.add(new ScanImage(image.scanId(), image.size(), image.mimetype(), () -> tracked));
+        }
+        return new Outgoing(requests, images, null, opened, unreadable);
+    }
+
+    private Outgoing encodeImages(List<Pending> batch) {
+        List<Pending> requests = new ArrayList<>(batch.size());
+        List<Map<String, Object>> items = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("scan_id", pending.image().scanId().toString());
+            try {
+                item.put("image_data", pending.image().base64());
+            } catch (IOException | RuntimeException e) {
+                fail(pending, e);
+                continue;
+            }
+            requests.add(pending);
+            items.add(item);
+        }
+        return new Outgoing(requests, null, items, List.of(), Set.of());
+    }
+}
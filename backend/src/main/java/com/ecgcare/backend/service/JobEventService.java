@@ -0,0 +1,135 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.EventsProperties;
+import com.ecgcare.backend.event.JobStatusEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-doctor server-sent event streams of job status changes. Events arrive from the application
+ * event bus after their transaction commits and are written by a small sender pool, so neither
+ * the job workers nor request threads wait on slow clients.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class JobEventService {
+    private final EventsProperties eventsProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<UUID, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private ExecutorService senders;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(eventsProperties.getSenderThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "job-event-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("events.connections", connections, AtomicInteger::get)
+                .description("Open job event streams")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        senders.shutdown();
+        emitters.values().forEach(list -> list.forEach(SseEmitter::complete));
+    }
+
+    /**
+     * Opens a stream for the doctor, closing their oldest one when they are at the limit.
+     */
+    public SseEmitter subscribe(UUID doctorId) {
+        SseEmitter emitter = new SseEmitter(eventsProperties.getTimeout().toMillis());
+        List<SseEmitter> evicted = new ArrayList<>();
+        emitters.compute(doctorId, (id, list) -> {
+            List<SseEmitter> current = list != null ? list : new CopyOnWriteArrayList<>();
+            current.add(emitter);
+            while (current.size() > eventsProperties.getMaxConnectionsPerDoctor()) {
+                evicted.add(current.remove(0));
+            }
+            return current;
+        });
+        connections.addAndGet(1 - evicted.size());
+        evicted.forEach(SseEmitter::complete);
+
+        emitter.onCompletion(() -> remove(doctorId, emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> remove(doctorId, emitter));
+
+        // Sends the response headers right away, so the client sees the stream open
+        send(doctorId, emitter, SseEmitter.event().comment("connected"));
+        return emitter;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onJobStatus(JobStatusEvent event) {
+        List<SseEmitter> targets = emitters.get(event.doctorId());
+        if (targets == null || targets.isEmpty()) {
+            return;
+        }
+        dispatch(() -> targets.forEach(emitter -> send(event.doctorId(), emitter, SseEmitter.event()
+                .name(event.type())
+                .data(event, MediaType.APPLICATION_JSON))));
+    }
+
+    @Scheduled(fixedDelayString = "${events.heartbeat-interval:PT15S}", initialDelayString = "PT15S")
+    public void heartbeat() {
+        if (emitters.isEmpty()) {
+            return;
+        }
+        dispatch(() -> emitters.forEach((doctorId, list) -> list.forEach(
+                emitter -> send(doctorId, emitter, SseEmitter.event().comment("heartbeat")))));
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            senders.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("Job event senders are shut down");
+        }
+    }
+
+    private void send(UUID doctorId, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            // The client went away; the container completes the emitter
+            remove(doctorId, emitter);
+        }
+    }
+
+    private void remove(UUID doctorId, SseEmitter emitter) {
+        emitters.computeIfPresent(doctorId, (id, list) -> {
+            if (list.remove(emitter)) {
+                connections.decrementAndGet();
+            }
+            return list.isEmpty() ? null : list;
+        });
+    }
+}
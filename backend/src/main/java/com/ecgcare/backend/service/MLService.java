@@ -1,15 +1,22 @@
 package com.ecgcare.backend.service;
 
+import com.ecgcare.backend.config.MlProperties;
 import com.ecgcare.backend.dto.response.MlResultResponse;
 import com.ecgcare.backend.entity.Doctor;
 import com.ecgcare.backend.entity.EcgScan;
 import com.ecgcare.backend.entity.MlResult;
+import com.ecgcare.backend.entity.PredictionJob;
 import com.ecgcare.backend.exception.ForbiddenException;
 import com.ecgcare.backend.exception.NotFoundException;
+import com.ecgcare.backend.ml.InferenceEngine;
+import com.ecgcare.backend.ml.Prediction;
+import com.ecgcare.backend.ml.ScanImage;
 import com.ecgcare.backend.repository.DoctorRepository;
 import com.ecgcare.backend.repository.EcgScanRepository;
 import com.ecgcare.backend.repository.MlResultRepository;
 import com.ecgcare.backend.repository.PatientAccessRepository;
+import com.ecgcare.backend.util.LruCache;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -17,18 +24,17 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 
-import java.io.InputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.Base64;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -40,94 +46,163 @@ public class MLService {
         private final DoctorRepository doctorRepository;
         private final PatientAccessRepository patientAccessRepository;
         private final AuditService auditService;
-        private final RestTemplate restTemplate;
-        private final ScanService scanService;
+        private final ScanBlobService scanBlobService;
+        private final ScanDerivativeService scanDerivativeService;
+        private final MlProperties mlProperties;
+        // Ordered; the HTTP engine serves every model version and comes last
+        private final List<InferenceEngine> inferenceEngines;
 
-        private static final String ML_SERVICE_URL = "http://localhost:8000/predict";
+        private LruCache<String, Prediction> predictionCache;
+        // Inference in progress, so concurrent requests for the same content and model share one call
+        private final Map<String, CompletableFuture<Prediction>> inFlight = new ConcurrentHashMap<>();
 
-        @Transactional
-        public MlResultResponse predict(UUID scanId, UUID doctorId, String modelVersion, BigDecimal threshold) {
+        @PostConstruct
+        void init() {
+                predictionCache = new LruCache<>(mlProperties.getResultCache().getMaxEntries());
+        }
+
+        /**
+         * Returns a prediction already made by the model for the same content, from memory or the
+         * database.
+         */
+        public Optional<Prediction> findPrediction(String checksum, String modelVersion) {
+                if (!mlProperties.getResultCache().isEnabled() || checksum == null) {
+                        return Optional.empty();
+                }
+                String key = checksum + "|" + modelVersion;
+                Prediction cached = predictionCache.get(key);
+                if (cached != null) {
+                        return Optional.of(cached);
+                }
+                Optional<Prediction> stored = mlResultRepository
+                                .findFirstByChecksumAndModelVersionOrderByCreatedAtDesc(checksum, modelVersion)
+                                .map(Prediction::of);
+                stored.ifPresent(prediction -> predictionCache.put(key, prediction));
+                return stored;
+        }
+
+        /**
+         * Returns the latest result recorded for the scan with the same model and threshold.
+         */
+        public Optional<MlResult> findResult(UUID scanId, String modelVersion, BigDecimal threshold) {
+                if (!mlProperties.getResultCache().isEnabled()) {
+                        return Optional.empty();
+                }
+                return mlResultRepository.findByScanIdAndModel(scanId, modelVersion, threshold, PageRequest.of(0, 1))
+                                .stream()
+                                .findFirst();
+        }
+
+        /**
+         * Runs the model on the scan with the first engine that serves the model version. No
+         * transaction is held while the model works, so this is called from the prediction job
+         * workers rather than request threads.
+         */
+        public Prediction infer(UUID scanId, UUID doctorId, String modelVersion) {
                 EcgScan scan = scanRepository.findById(scanId)
                                 .orElseThrow(() -> new NotFoundException("Scan not found"));
 
-                // Check access
+                // Check access before anything is read; the image itself is opened by the engine
                 patientAccessRepository.findRoleByPatientIdAndDoctorId(scan.getPatient().getPatientId(), doctorId)
                                 .orElseThrow(() -> new ForbiddenException("No access to this scan"));
 
-                Doctor doctor = doctorRepository.findById(doctorId)
-                                .orElseThrow(() -> new NotFoundException("Doctor not found"));
-
-                try {
-                        // Download image from MinIO
-                        InputStream imageStream = scanService.downloadScan(scanId, doctorId);
-
-                        // Convert image to base64
-                        byte[] imageBytes = imageStream.readAllBytes();
-                        String base64Image = Base64.getEncoder().encodeToString(imageBytes);
+                return infer(scan, modelVersion);
+        }
 
-                        log.debug("Downloaded image for scan {} (size: {} bytes)", scanId, imageBytes.length);
+        /**
+         * Same as {@link #infer(UUID, UUID, String)} for callers that have checked access already or
+         * act for the system, such as re-scoring runs. Concurrent calls for the same content and model
+         * wait for the first one instead of running the model again.
+         */
+        public Prediction infer(EcgScan scan, String modelVersion) {
+                // The threshold only applies to stored results, so it is not part of the key
+                String key = (scan.getChecksum() != null ? scan.getChecksum() : scan.getScanId().toString())
+                                + "|" + modelVersion;
+                CompletableFuture<Prediction> call = new CompletableFuture<>();
+                CompletableFuture<Prediction> existing = inFlight.putIfAbsent(key, call);
+                if (existing != null) {
+                        try {
+                                return existing.join();
+                        } catch (CompletionException e) {
+                                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+                        }
+                }
 
-                        // Prepare request to ML service
-                        Map<String, Object> request = new HashMap<>();
-                        request.put("scan_id", scanId.toString());
-                        request.put("image_data", base64Image);
+                try {
+                        Prediction prediction = run(scan, modelVersion);
+                        call.complete(prediction);
+                        return prediction;
+                } catch (RuntimeException e) {
+                        call.completeExceptionally(e);
+                        throw e;
+                } finally {
+                        inFlight.remove(key, call);
+                }
+        }
 
-                        // Set headers for JSON request
-                        HttpHeaders headers = new HttpHeaders();
-                        headers.setContentType(MediaType.APPLICATION_JSON);
-                        HttpEntity<Map<String, Object>> httpEntity = new HttpEntity<>(request, headers);
+        private Prediction run(EcgScan scan, String modelVersion) {
+                ScanImage image = modelInput(scan);
+                InferenceEngine engine = inferenceEngines.stream()
+                                .filter(candidate -> candidate.supports(modelVersion))
+                                .findFirst()
+                                .orElseThrow(() -> new IllegalArgumentException(
+                                                "No inference engine for model version " + modelVersion));
 
-                        // Call ML service
-                        Map<String, Object> response = restTemplate.postForObject(ML_SERVICE_URL, httpEntity,
-                                        Map.class);
+                try {
+                        return engine.predict(image);
+                } catch (Exception e) {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        log.error("Failed to get prediction", cause);
+                        throw new RuntimeException("Failed to get prediction: " + cause.getMessage());
+                }
+        }
 
-                        if (response == null) {
-                                throw new RuntimeException("ML service returned null response");
+        /**
+         * The scan downscaled to the model's input size when preprocessing is enabled, so only a
+         * small image is decoded and sent; formats the backend cannot decode go out as stored.
+         */
+        private ScanImage modelInput(EcgScan scan) {
+                UUID scanId = scan.getScanId();
+                if (mlProperties.getPreprocess().isEnabled()) {
+                        try {
+                                ScanDerivativeService.Derivative input = scanDerivativeService.getModelInput(scan);
+                                return new ScanImage(scanId, (long) input.data().length, input.mimetype(),
+                                                () -> new ByteArrayInputStream(input.data()));
+                        } catch (IOException e) {
+                                log.debug("Sending scan {} unprocessed: {}", scanId, e.getMessage());
                         }
+                }
+                return new ScanImage(scanId, scan.getSizeBytes(), scan.getMimetype(),
+                                () -> scanBlobService.open(scan.getStorageUri(), 0, null));
+        }
 
-                        String predictedLabel = (String) response.get("prediction");
-                        Object confidenceObj = response.get("confidence_score");
-                        Double confidenceScore;
-                        if (confidenceObj instanceof Number) {
-                                confidenceScore = ((Number) confidenceObj).doubleValue();
-                        } else {
-                                confidenceScore = Double.parseDouble(confidenceObj.toString());
-                        }
+        /**
+         * Stores the prediction made for a job; runs in the transaction that completes the job.
+         */
+        @Transactional
+        public MlResult saveResult(PredictionJob job, Prediction prediction) {
+                EcgScan scan = scanRepository.findById(job.getScanId())
+                                .orElseThrow(() -> new NotFoundException("Scan not found"));
+                Doctor doctor = doctorRepository.findById(job.getRequestedBy())
+                                .orElseThrow(() -> new NotFoundException("Doctor not found"));
 
-                        Map<String, Object> classProbs = new HashMap<>();
-                        classProbs.put("ASD", predictedLabel.equals("ASD") ? confidenceScore : 1.0 - confidenceScore);
-                        classProbs.put("VSD", predictedLabel.equals("VSD") ? confidenceScore : 1.0 - confidenceScore);
-
-                        // Save result
-                        MlResult result = MlResult.builder()
-                                        .patient(scan.getPatient())
-                                        .scan(scan)
-                                        .modelVersion(modelVersion != null ? modelVersion : "v1.0")
-                                        .predictedLabel(predictedLabel)
-                                        .classProbs(classProbs)
-                                        .threshold(threshold != null ? threshold : new BigDecimal("0.5"))
-                                        .createdBy(doctor)
-                                        .build();
-                        result = mlResultRepository.save(result);
-
-                        auditService.logAction("predict", "ml_result", result.getResultId(), doctorId, null, null);
-
-                        return MlResultResponse.builder()
-                                        .resultId(result.getResultId())
-                                        .scanId(scanId)
-                                        .patientId(scan.getPatient().getPatientId())
-                                        .modelVersion(result.getModelVersion())
-                                        .predictedLabel(predictedLabel)
-                                        .confidenceScore(BigDecimal.valueOf(confidenceScore))
-                                        .classProbabilities(classProbs)
-                                        .threshold(result.getThreshold())
-                                        .createdBy(doctorId)
-                                        .createdAt(result.getCreatedAt())
-                                        .build();
-                } catch (Exception e) {
-                        log.error("Failed to get prediction", e);
-                        throw new RuntimeException("Failed to get prediction: " + e.getMessage());
+                MlResult result = MlResult.builder()
+                                .patient(scan.getPatient())
+                                .scan(scan)
+                                .checksum(scan.getChecksum())
+                                .modelVersion(job.getModelVersion())
+                                .predictedLabel(prediction.predictedLabel())
+                                .classProbs(prediction.classProbs())
+                                .threshold(job.getThreshold())
+                                .createdBy(doctor)
+                                .build();
+                result = mlResultRepository.save(result);
+                if (scan.getChecksum() != null) {
+                        predictionCache.put(scan.getChecksum() + "|" + job.getModelVersion(), prediction);
                 }
+
+                auditService.logAction("predict", "ml_result", result.getResultId(), doctor.getDoctorId(), null, null);
+                return result;
         }
 
         public MlResultResponse getResult(UUID resultId, UUID doctorId) {
@@ -35,6 +35,8 @@ public class PatientService {
     private final com.ecgcare.backend.repository.DoctorCryptoRepository doctorCryptoRepository;
     private final EncryptionService encryptionService;
     private final AuditService auditService;
+    private final EcgScanRepository ecgScanRepository;
+    private final ScanService scanService;
 
     @Transactional
     public PatientResponse createPatient(PatientCreateRequest request, UUID doctorId) {
@@ -248,6 +250,9 @@ public class PatientService {
             throw new ForbiddenException("Insufficient permissions. Requires owner role.");
         }
 
+        // Scan rows cascade with the patient, so release their stored objects first
+        ecgScanRepository.findAllByPatientId(patientId).forEach(scanService::releaseContent);
+
         patientRepository.delete(patient);
         auditService.logAction("delete", "patient", patientId, doctorId, null, null);
     }
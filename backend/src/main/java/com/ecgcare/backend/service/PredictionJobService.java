@@ -0,0 +1,501 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.MlProperties;
+import com.ecgcare.backend.dto.response.PredictionJobResponse;
+import com.ecgcare.backend.entity.EcgScan;
+import com.ecgcare.backend.entity.MlResult;
+import com.ecgcare.backend.entity.PredictionJob;
+import com.ecgcare.backend.entity.PredictionJob.JobStatus;
+import com.ecgcare.backend.entity.RescoreRun;
+import com.ecgcare.backend.event.JobStatusEvent;
+import com.ecgcare.backend.event.PredictionJobQueuedEvent;
+import com.ecgcare.backend.event.ScanUploadedEvent;
+import com.ecgcare.backend.exception.ForbiddenException;
+import com.ecgcare.backend.exception.NotFoundException;
+import com.ecgcare.backend.ml.Prediction;
+import com.ecgcare.backend.repository.EcgScanRepository;
+import com.ecgcare.backend.repository.MlResultRepository;
+import com.ecgcare.backend.repository.PatientAccessRepository;
+import com.ecgcare.backend.repository.PredictionJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent queue of prediction requests. Requests only insert a job; a bounded pool of workers
+ * claims due jobs, calls the ML service without holding a transaction and records the result.
+ * Failed jobs are retried with backoff, and jobs left running by a dead worker are reclaimed when
+ * their lease expires. Scans can also be predicted right after upload; those background jobs use
+ * a limited share of the workers, and a later request for the same prediction attaches to them.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PredictionJobService {
+    private final PredictionJobRepository predictionJobRepository;
+    private final MlResultRepository mlResultRepository;
+    private final EcgScanRepository scanRepository;
+    private final PatientAccessRepository patientAccessRepository;
+    private final MLService mlService;
+    private final MlProperties mlProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private ExecutorService workers;
+    // One permit per worker, so jobs are only claimed when a worker is free to run them
+    private Semaphore slots;
+    // Share of the slots background jobs may hold
+    private Semaphore backgroundSlots;
+
+    @PostConstruct
+    void init() {
+        int workerThreads = mlProperties.getJobs().getWorkerThreads();
+        slots = new Semaphore(workerThreads);
+        backgroundSlots = new Semaphore(Math.min(mlProperties.getJobs().getBackgroundWorkers(), workerThreads));
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "prediction-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * Queues a prediction. A job already queued or running for the same scan, model and threshold
+     * is returned instead of a new one. Unless {@code force} is set, a result already stored for
+     * the scan, or a prediction made for identical content, completes the job right away without
+     * running the model.
+     */
+    public PredictionJobResponse enqueue(UUID scanId, UUID doctorId, String modelVersion, BigDecimal threshold,
+            boolean force) {
+        return enqueue(scanId, doctorId, modelVersion, threshold, force, false);
+    }
+
+    private PredictionJobResponse enqueue(UUID scanId, UUID doctorId, String modelVersion, BigDecimal threshold,
+            boolean force, boolean background) {
+        try {
+            return transactionTemplate.execute(status -> enqueueOnce(scanId, doctorId, modelVersion, threshold,
+                    force, background));
+        } catch (DataIntegrityViolationException e) {
+            // Another request, possibly on another node, queued the same prediction first; join it
+            return transactionTemplate.execute(status -> enqueueOnce(scanId, doctorId, modelVersion, threshold,
+                    force, background));
+        }
+    }
+
+    private PredictionJobResponse enqueueOnce(UUID scanId, UUID doctorId, String modelVersion, BigDecimal threshold,
+            boolean force, boolean background) {
+        EcgScan scan = scanRepository.findById(scanId)
+                .orElseThrow(() -> new NotFoundException("Scan not found"));
+
+        // Check access
+        patientAccessRepository.findRoleByPatientIdAndDoctorId(scan.getPatient().getPatientId(), doctorId)
+                .orElseThrow(() -> new ForbiddenException("No access to this scan"));
+
+        PredictionJob job = PredictionJob.builder()
+                .scanId(scanId)
+                .patientId(scan.getPatient().getPatientId())
+                .requestedBy(doctorId)
+                .modelVersion(modelVersion != null ? modelVersion : mlProperties.getJobs().getDefaultModelVersion())
+                .threshold(threshold != null ? threshold : mlProperties.getJobs().getDefaultThreshold())
+                .force(force)
+                .background(background)
+                .status(JobStatus.queued)
+                .build();
+        job.setDedupKey(dedupKey(scanId, job.getModelVersion(), job.getThreshold()));
+
+        // A job that finished while this lookup waited for its lock is no longer in flight
+        Optional<PredictionJob> inFlight = predictionJobRepository.findByDedupKeyForUpdate(job.getDedupKey())
+                .filter(existing -> existing.getStatus() == JobStatus.queued
+                        || existing.getStatus() == JobStatus.running);
+        if (inFlight.isPresent()) {
+            return toResponse(join(inFlight.get(), force, background));
+        }
+
+        if (!force) {
+            Optional<UUID> reused = mlService.findResult(scanId, job.getModelVersion(), job.getThreshold())
+                    .map(MlResult::getResultId)
+                    .or(() -> mlService.findPrediction(scan.getChecksum(), job.getModelVersion())
+                            .map(prediction -> mlService.saveResult(job, prediction).getResultId()));
+            if (reused.isPresent()) {
+                job.setStatus(JobStatus.succeeded);
+                job.setResultId(reused.get());
+                job.setDedupKey(null);
+                PredictionJob saved = predictionJobRepository.save(job);
+                publishStatus(saved);
+                return toResponse(saved);
+            }
+        }
+
+        // Flushed here so a concurrent duplicate fails on the unique dedup key before anything is published
+        PredictionJob queued = predictionJobRepository.saveAndFlush(job);
+        eventPublisher.publishEvent(new PredictionJobQueuedEvent(queued.getJobId()));
+        publishStatus(queued);
+        return toResponse(queued);
+    }
+
+    /**
+     * Attaches a request to the job in flight for the same prediction, raising the job to what the
+     * request asks for.
+     */
+    private PredictionJob join(PredictionJob existing, boolean force, boolean background) {
+        boolean changed = false;
+        if (!background && existing.getBackground()) {
+            // Someone is waiting for it now; move it ahead of the background work
+            existing.setBackground(false);
+            changed = true;
+        }
+        if (force && !existing.getForce()) {
+            // The model has to run rather than reuse a prediction made for identical content
+            existing.setForce(true);
+            changed = true;
+        }
+        if (!changed) {
+            return existing;
+        }
+        existing.setUpdatedAt(OffsetDateTime.now());
+        PredictionJob saved = predictionJobRepository.save(existing);
+        eventPublisher.publishEvent(new PredictionJobQueuedEvent(saved.getJobId()));
+        return saved;
+    }
+
+    /**
+     * Identifies a prediction while its job is queued or running; the column is unique, so only one
+     * such job can exist across all nodes.
+     */
+    private static String dedupKey(UUID scanId, String modelVersion, BigDecimal threshold) {
+        return scanId + "|" + modelVersion + "|" + threshold.setScale(4, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    /**
+     * Queues a background job for a re-scoring run in the caller's transaction. Returns false when
+     * the scan already has a result for the run's model and threshold, or one is on its way.
+     */
+    public boolean enqueueRescore(RescoreRun run, EcgScan scan) {
+        String dedupKey = dedupKey(scan.getScanId(), run.getModelVersion(), run.getThreshold());
+        // Looked up whether or not results are reused for requests, so a run never scores a scan twice
+        if (predictionJobRepository.findByDedupKey(dedupKey).isPresent()
+                || mlResultRepository.existsByScanIdAndModel(scan.getScanId(), run.getModelVersion(),
+                        run.getThreshold())) {
+            return false;
+        }
+
+        PredictionJob job = PredictionJob.builder()
+                .scanId(scan.getScanId())
+                .patientId(scan.getPatient().getPatientId())
+                .requestedBy(run.getStartedBy())
+                .modelVersion(run.getModelVersion())
+                .threshold(run.getThreshold())
+                .background(true)
+                .rescoreRunId(run.getRunId())
+                .status(JobStatus.queued)
+                .build();
+
+        Optional<Prediction> cached = mlService.findPrediction(scan.getChecksum(), run.getModelVersion());
+        if (cached.isPresent()) {
+            job.setResultId(mlService.saveResult(job, cached.get()).getResultId());
+            job.setStatus(JobStatus.succeeded);
+            predictionJobRepository.save(job);
+            return true;
+        }
+
+        // A request may queue the same prediction meanwhile; the run then leaves the scan to that job
+        // rather than fail on the unique dedup key and roll back the whole page
+        job.setJobId(UUID.randomUUID());
+        job.setDedupKey(dedupKey);
+        if (predictionJobRepository.insertIfAbsent(job) == 0) {
+            return false;
+        }
+        eventPublisher.publishEvent(new PredictionJobQueuedEvent(job.getJobId()));
+        return true;
+    }
+
+    public PredictionJobResponse getJob(UUID jobId, UUID doctorId) {
+        PredictionJob job = predictionJobRepository.findById(jobId)
+                .orElseThrow(() -> new NotFoundException("Prediction job not found"));
+
+        // Check access
+        patientAccessRepository.findRoleByPatientIdAndDoctorId(job.getPatientId(), doctorId)
+                .orElseThrow(() -> new ForbiddenException("No access to this prediction job"));
+
+        return toResponse(job);
+    }
+
+    /**
+     * Queues a background prediction for the default model once the upload is committed.
+     */
+    @TransactionalEventListener
+    public void onScanUploaded(ScanUploadedEvent event) {
+        if (!event.predict()) {
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    enqueue(event.scanId(), event.doctorId(), null, null, false, true);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to queue eager prediction for scan {}", event.scanId(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Prediction workers are shut down; no eager prediction for scan {}", event.scanId());
+        }
+    }
+
+    @TransactionalEventListener
+    public void onJobQueued(PredictionJobQueuedEvent event) {
+        try {
+            workers.execute(this::dispatch);
+        } catch (RejectedExecutionException e) {
+            log.debug("Prediction workers are shut down; job {} stays queued", event.jobId());
+        }
+    }
+
+    /**
+     * Claims due jobs while workers are free. Also runs on a timer to pick up retries and
+     * expired leases.
+     */
+    @Scheduled(fixedDelayString = "${ml.jobs.poll-interval:PT5S}", initialDelayString = "PT10S")
+    public void dispatch() {
+        while (slots.tryAcquire()) {
+            boolean includeBackground = backgroundSlots.tryAcquire();
+            PredictionJob job;
+            try {
+                job = transactionTemplate.execute(status -> claim(includeBackground));
+            } catch (RuntimeException e) {
+                release(includeBackground);
+                log.error("Failed to claim prediction job", e);
+                return;
+            }
+            if (job == null) {
+                release(includeBackground);
+                return;
+            }
+            // Only a background job keeps its background slot
+            boolean background = job.getBackground();
+            if (includeBackground && !background) {
+                backgroundSlots.release();
+            }
+            try {
+                workers.execute(() -> {
+                    try {
+                        run(job);
+                    } finally {
+                        release(background);
+                    }
+                    // Keep draining without waiting for the next poll
+                    dispatch();
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the lease expires and another instance takes the job
+                release(background);
+                return;
+            }
+        }
+    }
+
+    private void release(boolean background) {
+        if (background) {
+            backgroundSlots.release();
+        }
+        slots.release();
+    }
+
+    private PredictionJob claim(boolean includeBackground) {
+        OffsetDateTime now = OffsetDateTime.now();
+        List<PredictionJob> due = predictionJobRepository.findDueForUpdate(now, includeBackground,
+                PageRequest.of(0, 1));
+        if (due.isEmpty()) {
+            return null;
+        }
+        PredictionJob job = due.get(0);
+        job.setStatus(JobStatus.running);
+        job.setAttempts(job.getAttempts() + 1);
+        job.setLockedUntil(now.plus(mlProperties.getJobs().getLease()));
+        job.setUpdatedAt(now);
+        PredictionJob claimed = predictionJobRepository.save(job);
+        publishStatus(claimed);
+        return claimed;
+    }
+
+    private void run(PredictionJob job) {
+        try {
+            // An identical image may have been predicted since this job was queued. Force is read again,
+            // since a forced request may have joined the job after it was claimed.
+            Optional<Prediction> cached = isForced(job)
+                    ? Optional.empty()
+                    : scanRepository.findById(job.getScanId())
+                            .flatMap(scan -> mlService.findPrediction(scan.getChecksum(), job.getModelVersion()));
+            boolean completed = cached.isPresent() && complete(job, cached.get(), false);
+            if (!completed) {
+                complete(job, infer(job), true);
+            }
+            log.debug("Prediction job {} completed", job.getJobId());
+        } catch (Exception e) {
+            fail(job, e);
+        }
+    }
+
+    private boolean isForced(PredictionJob job) {
+        return predictionJobRepository.findById(job.getJobId())
+                .map(PredictionJob::getForce)
+                .orElse(job.getForce());
+    }
+
+    /**
+     * Whether the worker that claimed {@code claimed} still holds the job. Every claim counts an
+     * attempt, so a job reclaimed after its lease expired has moved on to a later attempt.
+     */
+    private static boolean isHeld(PredictionJob current, PredictionJob claimed) {
+        return current.getStatus() == JobStatus.running && current.getAttempts().equals(claimed.getAttempts());
+    }
+
+    /**
+     * Records the prediction under the job's row lock. A reused prediction is refused when a forced
+     * request joined in the meantime, and the model runs instead. A worker whose job has been
+     * reclaimed or has finished otherwise drops its result.
+     */
+    private boolean complete(PredictionJob job, Prediction prediction, boolean fresh) {
+        Boolean completed = transactionTemplate.execute(status -> {
+            Optional<PredictionJob> locked = predictionJobRepository.findByIdForUpdate(job.getJobId());
+            if (locked.isEmpty()) {
+                return true;
+            }
+            PredictionJob current = locked.get();
+            if (!isHeld(current, job)) {
+                log.info("Dropping the result of prediction job {} attempt {}; the job is {} at attempt {}",
+                        job.getJobId(), job.getAttempts(), current.getStatus(), current.getAttempts());
+                return true;
+            }
+            if (!fresh && current.getForce()) {
+                return false;
+            }
+            MlResult result = mlService.saveResult(current, prediction);
+            current.setStatus(JobStatus.succeeded);
+            current.setDedupKey(null);
+            current.setResultId(result.getResultId());
+            current.setLastError(null);
+            current.setLockedUntil(null);
+            current.setUpdatedAt(OffsetDateTime.now());
+            publishStatus(predictionJobRepository.save(current));
+            return true;
+        });
+        return Boolean.TRUE.equals(completed);
+    }
+
+    private Prediction infer(PredictionJob job) {
+        if (job.getRescoreRunId() == null) {
+            return mlService.infer(job.getScanId(), job.getRequestedBy(), job.getModelVersion());
+        }
+        // Re-scoring covers every scan, whoever started the run
+        EcgScan scan = scanRepository.findById(job.getScanId())
+                .orElseThrow(() -> new NotFoundException("Scan not found"));
+        return mlService.infer(scan, job.getModelVersion());
+    }
+
+    private void fail(PredictionJob job, Exception e) {
+        // The scan is gone or access was revoked since the job was queued; retrying will not help
+        boolean permanent = e instanceof NotFoundException || e instanceof ForbiddenException;
+        String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        try {
+            transactionTemplate.executeWithoutResult(status -> predictionJobRepository
+                    .findByIdForUpdate(job.getJobId())
+                    // A worker whose job was reclaimed leaves it to the worker now holding it
+                    .filter(current -> isHeld(current, job))
+                    .ifPresent(current -> {
+                        OffsetDateTime now = OffsetDateTime.now();
+                        current.setLastError(error.length() > 1000 ? error.substring(0, 1000) : error);
+                        current.setLockedUntil(null);
+                        current.setUpdatedAt(now);
+                        if (permanent || current.getAttempts() >= mlProperties.getJobs().getMaxAttempts()) {
+                            current.setStatus(JobStatus.failed);
+                            current.setDedupKey(null);
+                            log.warn("Prediction job {} failed after {} attempts: {}", current.getJobId(),
+                                    current.getAttempts(), error);
+                        } else {
+                            current.setStatus(JobStatus.queued);
+                            current.setNextAttemptAt(now.plus(retryDelay(current.getAttempts())));
+                            log.warn("Prediction job {} failed (attempt {}), retrying at {}", current.getJobId(),
+                                    current.getAttempts(), current.getNextAttemptAt());
+                        }
+                        publishStatus(predictionJobRepository.save(current));
+                    }));
+        } catch (RuntimeException saveError) {
+            log.error("Failed to record failure of prediction job {}", job.getJobId(), saveError);
+        }
+    }
+
+    /**
+     * Tells the requesting doctor's event streams about the job's new state once it commits.
+     * Re-scoring jobs are left out; they would flood the stream of whoever started the run.
+     */
+    private void publishStatus(PredictionJob job) {
+        if (job.getRescoreRunId() != null) {
+            return;
+        }
+        Map<String, Object> details = new HashMap<>();
+        details.put("scanId", job.getScanId());
+        details.put("modelVersion", job.getModelVersion());
+        details.put("attempts", job.getAttempts());
+        if (job.getResultId() != null) {
+            details.put("resultId", job.getResultId());
+        }
+        if (job.getLastError() != null) {
+            details.put("error", job.getLastError());
+        }
+        if (job.getStatus() == JobStatus.queued && job.getAttempts() > 0) {
+            details.put("nextAttemptAt", job.getNextAttemptAt());
+        }
+        eventPublisher.publishEvent(new JobStatusEvent(JobStatusEvent.PREDICTION, job.getJobId(),
+                job.getRequestedBy(), job.getStatus().name(), details));
+    }
+
+    private Duration retryDelay(int attempts) {
+        MlProperties.Jobs config = mlProperties.getJobs();
+        Duration delay = config.getRetryBaseDelay().multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(config.getRetryMaxDelay()) > 0 ? config.getRetryMaxDelay() : delay;
+    }
+
+    private PredictionJobResponse toResponse(PredictionJob job) {
+        return PredictionJobResponse.builder()
+                .jobId(job.getJobId())
+                .scanId(job.getScanId())
+                .patientId(job.getPatientId())
+                .modelVersion(job.getModelVersion())
+                .status(job.getStatus())
+                .attempts(job.getAttempts())
+                .error(job.getLastError())
+                .resultId(job.getResultId())
+                .createdAt(job.getCreatedAt())
+                .updatedAt(job.getUpdatedAt())
+                .build();
+    }
+}
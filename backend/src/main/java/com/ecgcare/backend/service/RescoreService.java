@@ -0,0 +1,204 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.MlProperties;
+import com.ecgcare.backend.dto.response.RescoreRunResponse;
+import com.ecgcare.backend.entity.EcgScan;
+import com.ecgcare.backend.entity.PredictionJob.JobStatus;
+import com.ecgcare.backend.entity.RescoreRun;
+import com.ecgcare.backend.entity.RescoreRun.RunStatus;
+import com.ecgcare.backend.exception.BadRequestException;
+import com.ecgcare.backend.exception.ForbiddenException;
+import com.ecgcare.backend.exception.NotFoundException;
+import com.ecgcare.backend.repository.EcgScanRepository;
+import com.ecgcare.backend.repository.PredictionJobRepository;
+import com.ecgcare.backend.repository.RescoreRunRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Re-scores every stored scan with a model version, for example after a new model is rolled out.
+ * A run walks the scans in id order a page at a time and queues background prediction jobs for
+ * them, keeping at most {@code ml.rescore.max-in-flight} of its jobs outstanding. The last scan id
+ * is saved with each page in the same transaction, so a run resumes where it stopped after a
+ * restart, and only one instance advances a run at a time.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RescoreService {
+    private final RescoreRunRepository rescoreRunRepository;
+    private final EcgScanRepository scanRepository;
+    private final PredictionJobRepository predictionJobRepository;
+    private final PredictionJobService predictionJobService;
+    private final AuditService auditService;
+    private final MlProperties mlProperties;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final UUID FIRST = new UUID(0, 0);
+    private static final List<JobStatus> IN_FLIGHT = List.of(JobStatus.queued, JobStatus.running);
+    private static final List<JobStatus> FINISHED = List.of(JobStatus.succeeded, JobStatus.failed);
+
+    @Transactional
+    public RescoreRunResponse start(UUID doctorId, String modelVersion, BigDecimal threshold) {
+        requireAdmin(doctorId);
+
+        BigDecimal runThreshold = threshold != null ? threshold : mlProperties.getJobs().getDefaultThreshold();
+        if (rescoreRunRepository.existsByModelVersionAndThresholdAndStatus(modelVersion, runThreshold,
+                RunStatus.running)) {
+            throw new BadRequestException("A re-scoring run for this model version is already running");
+        }
+
+        RescoreRun run = RescoreRun.builder()
+                .modelVersion(modelVersion)
+                .threshold(runThreshold)
+                .status(RunStatus.running)
+                .startedBy(doctorId)
+                .totalScans(scanRepository.count())
+                .build();
+        run = rescoreRunRepository.save(run);
+
+        auditService.logAction("rescore", "rescore_run", run.getRunId(), doctorId, null, null);
+        log.info("Re-scoring run {} started for model {} over {} scans", run.getRunId(), modelVersion,
+                run.getTotalScans());
+        return toResponse(run);
+    }
+
+    public RescoreRunResponse getRun(UUID runId, UUID doctorId) {
+        requireAdmin(doctorId);
+        return toResponse(rescoreRunRepository.findById(runId)
+                .orElseThrow(() -> new NotFoundException("Re-scoring run not found")));
+    }
+
+    /**
+     * Stops the run; its queued jobs are failed, running ones finish.
+     */
+    @Transactional
+    public RescoreRunResponse cancel(UUID runId, UUID doctorId) {
+        requireAdmin(doctorId);
+        RescoreRun run = rescoreRunRepository.findByIdForUpdate(runId)
+                .orElseThrow(() -> new NotFoundException("Re-scoring run not found"));
+        if (run.getStatus() != RunStatus.running) {
+            throw new BadRequestException("Re-scoring run is not running");
+        }
+
+        OffsetDateTime now = OffsetDateTime.now();
+        predictionJobRepository.failQueuedByRescoreRunId(runId, "Re-scoring run cancelled", now);
+        run.setStatus(RunStatus.cancelled);
+        run.setCompletedAt(now);
+        run.setUpdatedAt(now);
+        run = rescoreRunRepository.save(run);
+
+        auditService.logAction("cancel", "rescore_run", runId, doctorId, null, null);
+        return toResponse(run);
+    }
+
+    /**
+     * Tops up every running run with the next page of scans, as far as its in-flight budget allows.
+     */
+    @Scheduled(fixedDelayString = "${ml.rescore.poll-interval:PT2S}", initialDelayString = "PT15S")
+    public void advance() {
+        for (UUID runId : rescoreRunRepository.findRunningIds()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> advance(runId));
+            } catch (RuntimeException e) {
+                log.error("Failed to advance re-scoring run {}", runId, e);
+            }
+        }
+    }
+
+    private void advance(UUID runId) {
+        // The row lock keeps other instances off this run until the page is committed
+        RescoreRun run = rescoreRunRepository.findByIdForUpdate(runId).orElse(null);
+        if (run == null || run.getStatus() != RunStatus.running) {
+            return;
+        }
+
+        MlProperties.Rescore config = mlProperties.getRescore();
+        long inFlight = predictionJobRepository.countByRescoreRunIdAndStatusIn(runId, IN_FLIGHT);
+        int capacity = Math.min(config.getPageSize(), config.getMaxInFlight() - Math.toIntExact(inFlight));
+        if (capacity <= 0) {
+            return;
+        }
+
+        UUID after = run.getLastScanId() != null ? run.getLastScanId() : FIRST;
+        List<EcgScan> page = scanRepository.findAllAfter(after, PageRequest.of(0, capacity));
+        OffsetDateTime now = OffsetDateTime.now();
+        if (page.isEmpty()) {
+            if (inFlight == 0) {
+                run.setStatus(RunStatus.completed);
+                run.setCompletedAt(now);
+                run.setUpdatedAt(now);
+                rescoreRunRepository.save(run);
+                log.info("Re-scoring run {} completed: {} scans, {} already scored", runId, run.getScanned(),
+                        run.getSkipped());
+            }
+            return;
+        }
+
+        for (EcgScan scan : page) {
+            if (!predictionJobService.enqueueRescore(run, scan)) {
+                run.setSkipped(run.getSkipped() + 1);
+            }
+            run.setScanned(run.getScanned() + 1);
+            run.setLastScanId(scan.getScanId());
+        }
+        // Scans uploaded since the run started are covered too when their id sorts later
+        run.setTotalScans(run.getScanned() + scanRepository.countAfter(run.getLastScanId()));
+        run.setUpdatedAt(now);
+        rescoreRunRepository.save(run);
+    }
+
+    private void requireAdmin(UUID doctorId) {
+        if (!mlProperties.getRescore().getAdminDoctorIds().contains(doctorId)) {
+            throw new ForbiddenException("Re-scoring is restricted to administrators");
+        }
+    }
+
+    private RescoreRunResponse toResponse(RescoreRun run) {
+        UUID runId = run.getRunId();
+        OffsetDateTime now = OffsetDateTime.now();
+        long inFlight = predictionJobRepository.countByRescoreRunIdAndStatusIn(runId, IN_FLIGHT);
+        long succeeded = predictionJobRepository.countByRescoreRunIdAndStatusIn(runId, List.of(JobStatus.succeeded));
+        long failed = predictionJobRepository.countByRescoreRunIdAndStatusIn(runId, List.of(JobStatus.failed));
+
+        // Throughput over a recent window, so time the service was down does not skew the ETA
+        Duration window = mlProperties.getRescore().getThroughputWindow();
+        long recent = predictionJobRepository.countByRescoreRunIdAndStatusInAndUpdatedAtAfter(runId, FINISHED,
+                now.minus(window));
+        double perSecond = (double) recent / Math.max(1, window.toSeconds());
+        OffsetDateTime eta = null;
+        if (run.getStatus() == RunStatus.running && perSecond > 0) {
+            long remaining = Math.max(0, run.getTotalScans() - run.getScanned()) + inFlight;
+            eta = now.plusSeconds((long) Math.ceil(remaining / perSecond));
+        }
+
+        return RescoreRunResponse.builder()
+                .runId(runId)
+                .modelVersion(run.getModelVersion())
+                .threshold(run.getThreshold())
+                .status(run.getStatus())
+                .totalScans(run.getTotalScans())
+                .scanned(run.getScanned())
+                .skipped(run.getSkipped())
+                .inFlight(inFlight)
+                .succeeded(succeeded)
+                .failed(failed)
+                .throughputPerMinute(perSecond * 60)
+                .estimatedCompletionAt(eta)
+                .createdAt(run.getCreatedAt())
+                .updatedAt(run.getUpdatedAt())
+                .completedAt(run.getCompletedAt())
+                .build();
+    }
+}
@@ -0,0 +1,241 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.ScanProperties;
+import com.ecgcare.backend.util.BoundedInputStream;
+import com.ecgcare.backend.util.LruCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded local disk cache of content-addressed blobs. Blob objects never change once
+ * written for a given version (the DEK id of an encrypted blob), so entries only need to be dropped
+ * on eviction or when the blob is released; copies of an earlier version are simply never read.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ScanBlobCache {
+    private final ScanProperties scanProperties;
+
+    private static final String TEMP_SUFFIX = ".part";
+    private static final String VERSION_SEPARATOR = "@";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Path directory;
+    private LruCache<String, Long> index;
+    private final Map<String, CompletableFuture<Void>> fills = new ConcurrentHashMap<>();
+    private ExecutorService fillers;
+
+    @PostConstruct
+    void init() throws IOException {
+        ScanProperties.Cache config = scanProperties.getCache();
+        if (!config.isEnabled()) {
+            return;
+        }
+        directory = Paths.get(config.getDirectory()).toAbsolutePath();
+        Files.createDirectories(directory);
+        index = new LruCache<>(config.getMaxBytes(), size -> size, (key, size) -> deleteFile(key));
+        AtomicInteger threadCount = new AtomicInteger();
+        fillers = Executors.newFixedThreadPool(config.getFillThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "blob-cache-fill-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Re-adopt files from a previous run, oldest first so recent ones survive eviction
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> existing = files.filter(Files::isRegularFile).toList();
+            existing.stream()
+                    .filter(file -> file.getFileName().toString().endsWith(TEMP_SUFFIX))
+                    .forEach(file -> deleteQuietly(file));
+            existing.stream()
+                    .filter(file -> !file.getFileName().toString().endsWith(TEMP_SUFFIX))
+                    .sorted(Comparator.comparingLong(file -> file.toFile().lastModified()))
+                    .forEach(file -> index.put(file.getFileName().toString(), file.toFile().length()));
+        }
+        log.info("Scan blob cache at {} holding {} bytes in {} entries", directory, index.weight(), index.size());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (fillers != null) {
+            fillers.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return index != null;
+    }
+
+    /**
+     * Opens a cached blob for reading {@code length} bytes from {@code offset} (to the end when
+     * null), or returns empty on a miss.
+     */
+    public Optional<InputStream> open(String objectKey, String version, long offset, Long length) throws IOException {
+        String name = fileName(objectKey, version);
+        if (index.get(name) == null) {
+            return Optional.empty();
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory.resolve(name), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // Evicted between the index lookup and the open
+            index.remove(name);
+            return Optional.empty();
+        }
+        channel.position(offset);
+        long remaining = length != null ? length : channel.size() - offset;
+        return Optional.of(new BoundedInputStream(Channels.newInputStream(channel), remaining));
+    }
+
+    /**
+     * Whether a blob of this size can be cached at all.
+     */
+    public boolean fits(long size) {
+        return size <= scanProperties.getCache().getMaxBytes();
+    }
+
+    /**
+     * Copies the blob into the cache. The file only becomes visible once complete, so concurrent
+     * readers never see a partial blob. A fill already in progress for the same blob is waited for
+     * instead of downloading it again, and a blob turning out larger than the cache is dropped as
+     * soon as that is known.
+     */
+    public void fill(String objectKey, String version, ScanBlobService.BlobSource source) throws IOException {
+        String name = fileName(objectKey, version);
+        CompletableFuture<Void> fill = new CompletableFuture<>();
+        CompletableFuture<Void> running = fills.putIfAbsent(name, fill);
+        if (running != null) {
+            try {
+                running.join();
+            } catch (CompletionException | CancellationException e) {
+                // The other fill failed; the caller reads from storage
+            }
+            return;
+        }
+        try {
+            if (index.get(name) == null) {
+                copy(name, source);
+            }
+            fill.complete(null);
+        } catch (IOException | RuntimeException e) {
+            fill.completeExceptionally(e);
+            throw e;
+        } finally {
+            fills.remove(name, fill);
+        }
+    }
+
+    /**
+     * Fills the cache in the background, unless the blob is cached or already being filled.
+     */
+    public void fillAsync(String objectKey, String version, ScanBlobService.BlobSource source) {
+        String name = fileName(objectKey, version);
+        if (index.get(name) != null || fills.containsKey(name)) {
+            return;
+        }
+        try {
+            fillers.execute(() -> {
+                try {
+                    fill(objectKey, version, source);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Failed to cache {}", objectKey, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Cache fillers are shut down; not caching {}", objectKey);
+        }
+    }
+
+    private void copy(String name, ScanBlobService.BlobSource source) throws IOException {
+        long maxBytes = scanProperties.getCache().getMaxBytes();
+        Path temp = directory.resolve(name + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            long size = 0;
+            try (InputStream in = open(source); OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxBytes) {
+                        return;
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+            Files.move(temp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            index.put(name, size);
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    private InputStream open(ScanBlobService.BlobSource source) throws IOException {
+        try {
+            return source.open();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    public void invalidate(String objectKey) {
+        if (!isEnabled()) {
+            return;
+        }
+        String name = fileName(objectKey, null);
+        index.remove(name);
+        deleteFile(name);
+        index.removeIf(key -> key.startsWith(name + VERSION_SEPARATOR)).forEach(this::deleteFile);
+    }
+
+    // Blob keys are blobs/sha256/<xx>/<hex>, which flatten to unique names
+    private String fileName(String objectKey, String version) {
+        String name = objectKey.replace('/', '_');
+        return version != null ? name + VERSION_SEPARATOR + version : name;
+    }
+
+    private void deleteFile(String name) {
+        deleteQuietly(directory.resolve(name));
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached file {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.ScanProperties;
+import com.ecgcare.backend.entity.BlobDeletion;
+import com.ecgcare.backend.entity.ScanBlob;
+import com.ecgcare.backend.repository.BlobDeletionRepository;
+import com.ecgcare.backend.repository.ScanBlobRepository;
+import com.ecgcare.backend.storage.ScanStorage;
+import com.ecgcare.backend.util.BoundedInputStream;
+import com.ecgcare.backend.util.SegmentedAead;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.crypto.SecretKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.NoSuchFileException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed storage for scan images. Objects live under a key derived from
+ * their SHA-256 and are reference counted, so identical uploads share one object.
+ * When encryption is enabled each blob is sealed with its own DEK, wrapped with the master key.
+ * Content released and uploaded again gets a new DEK under the same key, so local copies and
+ * derivatives of encrypted blobs are additionally keyed by the DEK id. Parts of resumable uploads
+ * are sealed with a DEK of their own session until they are assembled.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScanBlobService {
+    private final ScanBlobRepository scanBlobRepository;
+    private final ScanStorage scanStorage;
+    private final ScanBlobCache scanBlobCache;
+    private final BlobDeletionRepository blobDeletionRepository;
+    private final EncryptionService encryptionService;
+    private final ScanProperties scanProperties;
+
+    public static final String CHECKSUM_PREFIX = "sha256:";
+    private static final String BLOB_PREFIX = "blobs/sha256/";
+    private static final String DERIVATIVE_PREFIX = "derivatives/";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String WRAPPING_SCHEME = "AES-GCM-MASTER";
+    private static final String PART_MIMETYPE = "application/octet-stream";
+
+    @FunctionalInterface
+    public interface BlobSource {
+        InputStream open() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface BlobWriter {
+        // dek is null when blobs are stored in plaintext
+        void write(String objectKey, SecretKey dek) throws Exception;
+    }
+
+    /**
+     * Refuses to start with encryption enabled but no usable master key, rather than failing
+     * every upload later.
+     */
+    @PostConstruct
+    void checkMasterKey() {
+        if (!scanProperties.getEncryption().isEnabled()) {
+            return;
+        }
+        int length;
+        try {
+            length = masterKey().length;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("scans.encryption.master-key is not valid Base64", e);
+        }
+        if (length < 32) {
+            throw new IllegalStateException("scans.encryption.master-key must decode to at least 32 bytes");
+        }
+    }
+
+    public String checksum(InputStream in) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return CHECKSUM_PREFIX + HexFormat.of().formatHex(digest.digest());
+    }
+
+    public String objectKeyFor(String checksum) {
+        String hex = checksum.startsWith(CHECKSUM_PREFIX) ? checksum.substring(CHECKSUM_PREFIX.length()) : checksum;
+        return BLOB_PREFIX + hex.substring(0, 2) + "/" + hex;
+    }
+
+    /**
+     * Derivatives (thumbnails, previews) of an object are stored under a prefix derived from its key,
+     * so they are shared by every scan referencing the same content.
+     */
+    public String derivativeKey(String objectKey, String name) {
+        return DERIVATIVE_PREFIX + objectKey + "/" + name;
+    }
+
+    /**
+     * Takes a reference on the blob with the given checksum, uploading it from the source
+     * only when no object with that content exists yet.
+     */
+    @Transactional
+    public ScanBlob acquire(String checksum, long size, String mimetype, BlobSource source) throws Exception {
+        return acquire(checksum, size, mimetype, (objectKey, dek) -> writeVerified(objectKey, checksum, size, mimetype,
+                source, dek));
+    }
+
+    /**
+     * Takes a reference on the blob with the given checksum, assembling it from already stored parts
+     * only when no object with that content exists yet. {@code partKey} is the wrapped DEK the parts
+     * were sealed with by {@link #putPart}, or null for plaintext parts.
+     */
+    @Transactional
+    public ScanBlob acquireComposed(String checksum, long size, String mimetype, List<String> partKeys,
+            EncryptionService.EncryptedData partKey) throws Exception {
+        return acquire(checksum, size, mimetype, (objectKey, dek) -> {
+            if (dek != null || partKey != null) {
+                // Sealed content cannot be concatenated server-side, so the parts are streamed through the ciphers
+                writeVerified(objectKey, checksum, size, mimetype, () -> openParts(partKeys, partKey), dek);
+                return;
+            }
+            scanStorage.compose(objectKey, partKeys, size, mimetype);
+        });
+    }
+
+    private void writeVerified(String objectKey, String checksum, long size, String mimetype, BlobSource source,
+            SecretKey dek) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new DigestInputStream(source.open(), digest)) {
+            if (dek == null) {
+                putObject(objectKey, in, size, mimetype);
+            } else {
+                int segmentSize = scanProperties.getEncryption().getSegmentSize();
+                putObject(objectKey, SegmentedAead.encrypt(in, dek, segmentSize),
+                        SegmentedAead.ciphertextSize(size, segmentSize), mimetype);
+            }
+        }
+        if (!checksum.equals(CHECKSUM_PREFIX + HexFormat.of().formatHex(digest.digest()))) {
+            removeObject(objectKey);
+            throw new IllegalStateException("Checksum mismatch while storing scan content");
+        }
+    }
+
+    private ScanBlob acquire(String checksum, long size, String mimetype, BlobWriter writer) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            Optional<ScanBlob> existing = scanBlobRepository.findByChecksumForUpdate(checksum);
+            if (existing.isPresent()) {
+                ScanBlob blob = existing.get();
+                blob.setRefCount(blob.getRefCount() + 1);
+                log.debug("Reusing stored blob {} (refs: {})", blob.getObjectKey(), blob.getRefCount());
+                return scanBlobRepository.save(blob);
+            }
+
+            String objectKey = objectKeyFor(checksum);
+            ScanBlob.ScanBlobBuilder builder = ScanBlob.builder()
+                    .checksum(checksum)
+                    .objectKey(objectKey)
+                    .sizeBytes(size)
+                    .mimetype(mimetype)
+                    .refCount(1);
+            SecretKey dek = null;
+            if (scanProperties.getEncryption().isEnabled()) {
+                dek = encryptionService.generateDEK();
+                EncryptionService.EncryptedData wrappedDek = encryptionService.wrapKey(dek, masterKey());
+                builder.wrappingScheme(WRAPPING_SCHEME)
+                        .dekId(UUID.randomUUID().toString())
+                        .dekEnc(wrappedDek.data())
+                        .dekIv(wrappedDek.iv())
+                        .dekTag(wrappedDek.tag());
+            }
+            ScanBlob blob = builder.build();
+
+            // The row goes in before the object is written, so a concurrent first upload of the same content
+            // waits here until this one commits and then takes a reference instead of writing the object
+            if (scanBlobRepository.insertIfAbsent(blob) == 0) {
+                if (attempt >= 3) {
+                    throw new IllegalStateException("Could not store blob " + checksum + " under contention");
+                }
+                continue;
+            }
+
+            // The content was released earlier and is queued for deletion; cancel that before rewriting it.
+            // This waits for the deletion worker if it currently holds the entry.
+            blobDeletionRepository.deleteByObjectKey(objectKey);
+            writer.write(objectKey, dek);
+            return blob;
+        }
+    }
+
+    /**
+     * Drops one reference to the object. When the last one goes, the object is queued for deletion
+     * in the same transaction and removed from storage by {@link BlobDeletionService}.
+     * Objects written before content addressing have no blob row and are queued directly.
+     */
+    @Transactional
+    public void release(String objectKey) {
+        Optional<ScanBlob> existing = scanBlobRepository.findByObjectKeyForUpdate(objectKey);
+        if (existing.isPresent()) {
+            ScanBlob blob = existing.get();
+            if (blob.getRefCount() > 1) {
+                blob.setRefCount(blob.getRefCount() - 1);
+                scanBlobRepository.save(blob);
+                return;
+            }
+            scanBlobRepository.delete(blob);
+        }
+        scheduleDeletion(objectKey);
+    }
+
+    @Transactional
+    public void scheduleDeletion(String objectKey) {
+        blobDeletionRepository.save(BlobDeletion.builder().objectKey(objectKey).build());
+    }
+
+    /**
+     * Drops local copies and derivatives of an object that has been removed from storage.
+     */
+    public void evict(String objectKey) {
+        scanBlobCache.invalidate(objectKey);
+        if (objectKey.startsWith(BLOB_PREFIX)) {
+            removeDerivatives(objectKey);
+        }
+    }
+
+    /**
+     * Lazily lists every object under the prefix; the stream must be closed.
+     */
+    public Stream<ScanStorage.StoredObject> listObjects(String prefix) throws IOException {
+        return scanStorage.list(prefix);
+    }
+
+    /**
+     * Returns the object key a derivative belongs to, or null for other keys.
+     */
+    public String derivativeParent(String objectKey) {
+        if (!objectKey.startsWith(DERIVATIVE_PREFIX) || objectKey.lastIndexOf('/') <= DERIVATIVE_PREFIX.length()) {
+            return null;
+        }
+        return objectKey.substring(DERIVATIVE_PREFIX.length(), objectKey.lastIndexOf('/'));
+    }
+
+    /**
+     * Opens {@code length} bytes of the content from {@code offset} (to the end when null),
+     * decrypting encrypted blobs on the fly.
+     */
+    public InputStream open(String objectKey, long offset, Long length) throws Exception {
+        Optional<ScanBlob> blob = objectKey.startsWith(BLOB_PREFIX)
+                ? scanBlobRepository.findByObjectKey(objectKey)
+                : Optional.empty();
+        if (blob.isPresent() && blob.get().getWrappingScheme() != null) {
+            return openDecrypted(blob.get(), offset, length);
+        }
+        return openStored(objectKey, null, blob.map(ScanBlob::getSizeBytes).orElse(null), offset, length);
+    }
+
+    /**
+     * Reads only the segments covering the range. The header comes from a separate small read,
+     * which the disk cache absorbs once the blob has been cached.
+     */
+    private InputStream openDecrypted(ScanBlob blob, long offset, Long length) throws Exception {
+        String objectKey = blob.getObjectKey();
+        String version = blob.getDekId();
+        long size = blob.getSizeBytes();
+        SecretKey dek = unwrapDek(blob);
+        if (offset == 0 && length == null) {
+            InputStream in = openStored(objectKey, version, size, 0, null);
+            return SegmentedAead.decrypt(in, dek, SegmentedAead.readHeader(in), 0, -1);
+        }
+
+        long end = length != null ? Math.min(size, offset + length) : size;
+        if (end <= offset) {
+            return InputStream.nullInputStream();
+        }
+        SegmentedAead.Header header;
+        try (InputStream in = openStored(objectKey, version, size, 0, (long) SegmentedAead.HEADER_LENGTH)) {
+            header = SegmentedAead.readHeader(in);
+        }
+        int segmentSize = header.segmentSize();
+        long firstSegment = offset / segmentSize;
+        long endSegment = (end - 1) / segmentSize;
+        long lastSegment = SegmentedAead.segmentCount(size, segmentSize) - 1;
+        long from = header.segmentOffset(firstSegment);
+        Long span = endSegment == lastSegment ? null : header.segmentOffset(endSegment + 1) - from;
+
+        InputStream decrypted = SegmentedAead.decrypt(openStored(objectKey, version, size, from, span), dek, header,
+                firstSegment, lastSegment);
+        try {
+            decrypted.skipNBytes(offset - firstSegment * segmentSize);
+        } catch (IOException e) {
+            decrypted.close();
+            throw e;
+        }
+        return new BoundedInputStream(decrypted, end - offset);
+    }
+
+    /**
+     * {@code version} is the DEK id of an encrypted blob and null for plaintext ones. {@code size}
+     * is the blob's size when known, to skip caching blobs larger than the cache.
+     */
+    private InputStream openStored(String objectKey, String version, Long size, long offset, Long length)
+            throws Exception {
+        // Blob objects are immutable for a given DEK, so they can be served from the local disk cache
+        if (scanBlobCache.isEnabled() && objectKey.startsWith(BLOB_PREFIX)) {
+            Optional<InputStream> cached = scanBlobCache.open(objectKey, version, offset, length);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+            if (size == null || scanBlobCache.fits(size)) {
+                BlobSource source = () -> openObject(objectKey, 0, null);
+                if (offset == 0 && length == null) {
+                    try {
+                        scanBlobCache.fill(objectKey, version, source);
+                    } catch (IOException e) {
+                        log.warn("Failed to cache {}, reading from storage", objectKey, e);
+                    }
+                    cached = scanBlobCache.open(objectKey, version, offset, length);
+                    if (cached.isPresent()) {
+                        return cached.get();
+                    }
+                } else {
+                    // A range is served straight from storage while the whole blob is cached for later reads
+                    scanBlobCache.fillAsync(objectKey, version, source);
+                }
+            }
+        }
+        return openObject(objectKey, offset, length);
+    }
+
+    private InputStream openObject(String objectKey, long offset, Long length) throws IOException {
+        return scanStorage.get(objectKey, offset, length);
+    }
+
+    /**
+     * Creates a time-limited GET URL clients can fetch the object from directly, when the storage
+     * backend supports it.
+     */
+    public Optional<String> presignedUrl(String objectKey, Duration ttl, String mimetype, String filename)
+            throws IOException {
+        return scanStorage.presign(objectKey, ttl, mimetype, filename);
+    }
+
+    /**
+     * Opens a stored derivative of the object, or returns empty when it has not been generated.
+     * Derivatives of encrypted blobs are encrypted with the blob's key.
+     */
+    public Optional<InputStream> openDerivative(String objectKey, String name) throws Exception {
+        Optional<ScanBlob> blob = scanBlobRepository.findByObjectKey(objectKey);
+        InputStream in;
+        try {
+            in = openObject(derivativeKey(objectKey, storedName(blob, name)), 0, null);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        if (blob.isPresent() && blob.get().getWrappingScheme() != null) {
+            return Optional.of(SegmentedAead.decrypt(in, unwrapDek(blob.get()), SegmentedAead.readHeader(in), 0, -1));
+        }
+        return Optional.of(in);
+    }
+
+    public void putDerivative(String objectKey, String name, byte[] data, String mimetype) throws Exception {
+        InputStream in = new ByteArrayInputStream(data);
+        long size = data.length;
+        Optional<ScanBlob> blob = scanBlobRepository.findByObjectKey(objectKey);
+        if (blob.isPresent() && blob.get().getWrappingScheme() != null) {
+            int segmentSize = scanProperties.getEncryption().getSegmentSize();
+            in = SegmentedAead.encrypt(in, unwrapDek(blob.get()), segmentSize);
+            size = SegmentedAead.ciphertextSize(size, segmentSize);
+        }
+        putObject(derivativeKey(objectKey, storedName(blob, name)), in, size, mimetype);
+    }
+
+    // Derivatives of encrypted blobs are sealed with the blob's DEK, so they are only valid for that DEK
+    private String storedName(Optional<ScanBlob> blob, String name) {
+        return blob.map(ScanBlob::getDekId).map(dekId -> dekId + "-" + name).orElse(name);
+    }
+
+    /**
+     * Encrypted objects cannot be handed to clients as presigned URLs.
+     */
+    public boolean isEncrypted(String objectKey) {
+        return scanBlobRepository.findByObjectKey(objectKey)
+                .map(blob -> blob.getWrappingScheme() != null)
+                .orElse(false);
+    }
+
+    private SecretKey unwrapDek(ScanBlob blob) throws Exception {
+        return unwrapKey(new EncryptionService.EncryptedData(blob.getDekEnc(), blob.getDekIv(), blob.getDekTag()));
+    }
+
+    private SecretKey unwrapKey(EncryptionService.EncryptedData wrappedKey) throws Exception {
+        return encryptionService.unwrapKey(wrappedKey, masterKey());
+    }
+
+    private byte[] masterKey() {
+        String masterKey = scanProperties.getEncryption().getMasterKey();
+        if (masterKey == null || masterKey.isBlank()) {
+            throw new IllegalStateException(
+                    "scans.encryption.master-key is not configured; set SCAN_MASTER_KEY or disable scan encryption");
+        }
+        return Base64.getDecoder().decode(masterKey);
+    }
+
+    /**
+     * Returns a new DEK for the parts of one resumable upload, wrapped with the master key, or null
+     * when encryption is disabled and parts are stored in plaintext.
+     */
+    public EncryptionService.EncryptedData newPartKey() throws Exception {
+        if (!scanProperties.getEncryption().isEnabled()) {
+            return null;
+        }
+        return encryptionService.wrapKey(encryptionService.generateDEK(), masterKey());
+    }
+
+    /**
+     * Stores a part of a resumable upload, sealed with the session's wrapped DEK when it has one,
+     * and returns the SHA-256 of the plaintext.
+     */
+    public String putPart(String objectKey, InputStream in, long size, EncryptionService.EncryptedData partKey)
+            throws Exception {
+        if (partKey == null) {
+            return putObject(objectKey, in, size, PART_MIMETYPE);
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        int segmentSize = scanProperties.getEncryption().getSegmentSize();
+        try (InputStream sealed = SegmentedAead.encrypt(new DigestInputStream(in, digest), unwrapKey(partKey),
+                segmentSize)) {
+            scanStorage.put(objectKey, sealed, SegmentedAead.ciphertextSize(size, segmentSize), PART_MIMETYPE);
+        }
+        return CHECKSUM_PREFIX + HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Streams the parts back to back as plaintext, opening each one only when the previous one is
+     * consumed.
+     */
+    public InputStream openParts(List<String> partKeys, EncryptionService.EncryptedData partKey) throws Exception {
+        SecretKey dek = partKey != null ? unwrapKey(partKey) : null;
+        return new SequenceInputStream(new Enumeration<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < partKeys.size();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (!hasMoreElements()) {
+                    throw new NoSuchElementException();
+                }
+                String partKey = partKeys.get(next++);
+                try {
+                    InputStream in = openObject(partKey, 0, null);
+                    if (dek == null) {
+                        return in;
+                    }
+                    try {
+                        return SegmentedAead.decrypt(in, dek, SegmentedAead.readHeader(in), 0, -1);
+                    } catch (IOException e) {
+                        in.close();
+                        throw e;
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to open " + partKey, e);
+                }
+            }
+        });
+    }
+
+    public long objectSize(String objectKey) throws IOException {
+        return scanStorage.stat(objectKey)
+                .orElseThrow(() -> new NoSuchFileException(objectKey))
+                .size();
+    }
+
+    /**
+     * Streams the object to storage while computing its SHA-256,
+     * so the content is read once and never held in memory as a whole.
+     */
+    public String putObject(String objectName, InputStream in, long size, String mimetype)
+            throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (DigestInputStream digestStream = new DigestInputStream(in, digest)) {
+            scanStorage.put(objectName, digestStream, size, mimetype);
+        }
+        return CHECKSUM_PREFIX + HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Removes the objects and returns the keys that could not be removed, with the reason.
+     * Missing objects count as removed.
+     */
+    public Map<String, String> removeObjects(List<String> objectKeys) {
+        return scanStorage.deleteAll(objectKeys);
+    }
+
+    private void removeDerivatives(String objectKey) {
+        try (Stream<ScanStorage.StoredObject> derivatives = listObjects(derivativeKey(objectKey, ""))) {
+            List<String> keys = derivatives.map(ScanStorage.StoredObject::key).toList();
+            if (!keys.isEmpty()) {
+                removeObjects(keys);
+            }
+        } catch (Exception e) {
+            log.error("Failed to delete derivatives of {}", objectKey, e);
+        }
+    }
+
+    private void removeObject(String objectKey) {
+        try {
+            scanStorage.delete(objectKey);
+        } catch (Exception e) {
+            log.error("Failed to delete scan object {}", objectKey, e);
+        }
+    }
+}
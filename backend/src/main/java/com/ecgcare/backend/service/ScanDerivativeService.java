@@ -0,0 +1,206 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.MlProperties;
+import com.ecgcare.backend.config.ScanProperties;
+import com.ecgcare.backend.entity.EcgScan;
+import com.ecgcare.backend.event.ScanUploadedEvent;
+import com.ecgcare.backend.exception.BadRequestException;
+import com.ecgcare.backend.exception.ForbiddenException;
+import com.ecgcare.backend.exception.NotFoundException;
+import com.ecgcare.backend.repository.EcgScanRepository;
+import com.ecgcare.backend.repository.PatientAccessRepository;
+import com.ecgcare.backend.util.LruCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downscaled derivatives of scan images for list and viewer screens and for the model. Derivatives are generated
+ * on first request (or right after upload when configured), stored next to the original in
+ * the object store, and hot thumbnails and model inputs are kept in bounded in-memory LRUs.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScanDerivativeService {
+    private final EcgScanRepository scanRepository;
+    private final PatientAccessRepository patientAccessRepository;
+    private final ScanBlobService scanBlobService;
+    private final ImageService imageService;
+    private final ScanProperties scanProperties;
+    private final MlProperties mlProperties;
+
+    private static final String DERIVATIVE_MIMETYPE = "image/jpeg";
+    private static final String MODEL_INPUT_MIMETYPE = "image/png";
+
+    private LruCache<String, byte[]> thumbnailCache;
+    private LruCache<String, byte[]> modelInputCache;
+    private ExecutorService workers;
+
+    public enum Profile {
+        thumbnail, preview
+    }
+
+    public record Derivative(byte[] data, String mimetype) {
+    }
+
+    @PostConstruct
+    void init() {
+        ScanProperties.Derivatives config = scanProperties.getDerivatives();
+        thumbnailCache = new LruCache<>(config.getCacheBytes(), data -> data.length);
+        modelInputCache = new LruCache<>(mlProperties.getPreprocess().getCacheBytes(), data -> data.length);
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(config.getWorkerThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "scan-derivative-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdown();
+    }
+
+    public Derivative getDerivative(UUID scanId, UUID doctorId, Profile profile) {
+        EcgScan scan = findAccessibleScan(scanId, doctorId);
+        try {
+            return new Derivative(load(scan.getStorageUri(), profile), DERIVATIVE_MIMETYPE);
+        } catch (ImageService.UndecodableImageException e) {
+            throw new BadRequestException("Preview not available for this scan: " + e.getMessage());
+        } catch (Exception e) {
+            // Storage failures are ours, not the request's
+            log.error("Failed to load {} for scan {}", profile, scanId, e);
+            throw new RuntimeException("Failed to load " + profile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The scan as the model takes it, a lossless PNG at the model's input size. Like the other
+     * derivatives it is stored next to the original, so scans with the same content share it.
+     * Callers check access.
+     *
+     * @throws IOException if the image cannot be decoded here
+     */
+    public Derivative getModelInput(EcgScan scan) throws IOException {
+        try {
+            return new Derivative(loadModelInput(scan.getStorageUri()), MODEL_INPUT_MIMETYPE);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to load model input for scan {}", scan.getScanId(), e);
+            throw new RuntimeException("Failed to load model input: " + e.getMessage());
+        }
+    }
+
+    private EcgScan findAccessibleScan(UUID scanId, UUID doctorId) {
+        EcgScan scan = scanRepository.findById(scanId)
+                .orElseThrow(() -> new NotFoundException("Scan not found"));
+
+        // Check access
+        patientAccessRepository.findRoleByPatientIdAndDoctorId(scan.getPatient().getPatientId(), doctorId)
+                .orElseThrow(() -> new ForbiddenException("No access to this scan"));
+        return scan;
+    }
+
+    @TransactionalEventListener
+    public void onScanUploaded(ScanUploadedEvent event) {
+        if (!scanProperties.getDerivatives().isEager()) {
+            return;
+        }
+        workers.submit(() -> {
+            for (Profile profile : Profile.values()) {
+                try {
+                    load(event.storageUri(), profile);
+                } catch (Exception e) {
+                    log.warn("Failed to pre-generate {} for scan {}", profile, event.scanId(), e);
+                }
+            }
+            if (mlProperties.getPreprocess().isEnabled()) {
+                try {
+                    loadModelInput(event.storageUri());
+                } catch (Exception e) {
+                    log.warn("Failed to pre-generate model input for scan {}", event.scanId(), e);
+                }
+            }
+        });
+    }
+
+    private byte[] load(String objectKey, Profile profile) throws Exception {
+        return load(objectKey, profile + ".jpg", DERIVATIVE_MIMETYPE,
+                profile == Profile.thumbnail ? thumbnailCache : null, () -> generate(objectKey, profile));
+    }
+
+    /**
+     * The name carries the preprocessing profile, so changing it produces a new derivative
+     * instead of serving a stale one.
+     */
+    private byte[] loadModelInput(String objectKey) throws Exception {
+        MlProperties.Preprocess config = mlProperties.getPreprocess();
+        String name = "model-" + config.getSize() + "-" + config.getFit() + ".png";
+        return load(objectKey, name, MODEL_INPUT_MIMETYPE, modelInputCache, () -> {
+            BufferedImage image;
+            try (InputStream in = scanBlobService.open(objectKey, 0, null)) {
+                image = imageService.readSquare(in, config.getSize(), config.getFit() == MlProperties.Fit.crop);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            imageService.writePng(image, out);
+            return out.toByteArray();
+        });
+    }
+
+    private interface Generator {
+        byte[] generate() throws Exception;
+    }
+
+    private byte[] load(String objectKey, String name, String mimetype, LruCache<String, byte[]> cache,
+            Generator generator) throws Exception {
+        String key = scanBlobService.derivativeKey(objectKey, name);
+        if (cache != null) {
+            byte[] cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        byte[] data;
+        Optional<InputStream> stored = scanBlobService.openDerivative(objectKey, name);
+        if (stored.isPresent()) {
+            try (InputStream in = stored.get()) {
+                data = in.readAllBytes();
+            }
+        } else {
+            data = generator.generate();
+            scanBlobService.putDerivative(objectKey, name, data, mimetype);
+        }
+
+        if (cache != null) {
+            cache.put(key, data);
+        }
+        return data;
+    }
+
+    private byte[] generate(String objectKey, Profile profile) throws Exception {
+        ScanProperties.Derivatives config = scanProperties.getDerivatives();
+        int maxDimension = profile == Profile.thumbnail ? config.getThumbnailSize() : config.getPreviewSize();
+        BufferedImage image;
+        try (InputStream in = scanBlobService.open(objectKey, 0, null)) {
+            image = imageService.readScaled(in, maxDimension);
+        }
+        return imageService.encodeJpeg(image, config.getJpegQuality());
+    }
+}
@@ -0,0 +1,251 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.ScanProperties;
+import com.ecgcare.backend.dto.response.MlResultResponse;
+import com.ecgcare.backend.dto.response.ScanResponse;
+import com.ecgcare.backend.entity.EcgScan;
+import com.ecgcare.backend.entity.MlResult;
+import com.ecgcare.backend.exception.ForbiddenException;
+import com.ecgcare.backend.exception.NotFoundException;
+import com.ecgcare.backend.repository.EcgScanRepository;
+import com.ecgcare.backend.repository.MlResultRepository;
+import com.ecgcare.backend.repository.PatientAccessRepository;
+import com.ecgcare.backend.repository.PatientRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams every scan of a patient, plus a JSON manifest of the scan and prediction rows, as one
+ * ZIP. Rows are read in keyset pages and only a few objects are fetched ahead of the writer, so
+ * memory use does not depend on how many scans the patient has.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScanExportService {
+    private final PatientRepository patientRepository;
+    private final PatientAccessRepository patientAccessRepository;
+    private final EcgScanRepository scanRepository;
+    private final MlResultRepository mlResultRepository;
+    private final ScanBlobService scanBlobService;
+    private final AuditService auditService;
+    private final ScanProperties scanProperties;
+    private final ObjectMapper objectMapper;
+
+    private static final UUID FIRST = new UUID(0, 0);
+    private static final String MANIFEST = "manifest.json";
+
+    private ExecutorService fetchers;
+
+    @PostConstruct
+    void startFetchers() {
+        AtomicInteger threadCount = new AtomicInteger();
+        fetchers = Executors.newFixedThreadPool(scanProperties.getExport().getFetchThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "scan-export-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stopFetchers() {
+        fetchers.shutdownNow();
+    }
+
+    /**
+     * Checks access up front and returns the body that writes the archive once the response starts.
+     */
+    public StreamingResponseBody exportPatient(UUID patientId, UUID doctorId) {
+        if (!patientRepository.existsById(patientId)) {
+            throw new NotFoundException("Patient not found");
+        }
+
+        // Check access
+        patientAccessRepository.findRoleByPatientIdAndDoctorId(patientId, doctorId)
+                .orElseThrow(() -> new ForbiddenException("No access to this patient"));
+
+        auditService.logAction("export", "patient", patientId, doctorId, null, null);
+        return out -> writeArchive(patientId, out);
+    }
+
+    private void writeArchive(UUID patientId, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // Scan images are already compressed
+        zip.setLevel(Deflater.BEST_SPEED);
+        Map<UUID, String> failures = new HashMap<>();
+
+        int pageSize = scanProperties.getExport().getPageSize();
+        int prefetch = scanProperties.getExport().getPrefetch();
+        Deque<PendingScan> window = new ArrayDeque<>();
+        try {
+            UUID after = FIRST;
+            List<EcgScan> page;
+            do {
+                page = scanRepository.findByPatientIdAfter(patientId, after, PageRequest.of(0, pageSize));
+                for (EcgScan scan : page) {
+                    window.addLast(new PendingScan(scan, fetchers.submit(
+                            () -> scanBlobService.open(scan.getStorageUri(), 0, null))));
+                    if (window.size() >= prefetch) {
+                        writeScan(zip, window.removeFirst(), failures);
+                    }
+                    after = scan.getScanId();
+                }
+            } while (page.size() == pageSize);
+            while (!window.isEmpty()) {
+                writeScan(zip, window.removeFirst(), failures);
+            }
+
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            writeManifest(patientId, zip, failures);
+            zip.closeEntry();
+            zip.finish();
+        } finally {
+            // The client may have gone away; release any streams that were opened ahead
+            window.forEach(pending -> closeQuietly(pending.content()));
+        }
+    }
+
+    private void writeScan(ZipOutputStream zip, PendingScan pending, Map<UUID, String> failures) throws IOException {
+        EcgScan scan = pending.scan();
+        InputStream content;
+        try {
+            content = pending.content().get();
+        } catch (ExecutionException e) {
+            log.warn("Skipping scan {} in export", scan.getScanId(), e.getCause());
+            failures.put(scan.getScanId(), String.valueOf(e.getCause().getMessage()));
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        }
+
+        try (InputStream in = content) {
+            zip.putNextEntry(new ZipEntry(entryName(scan)));
+            in.transferTo(zip);
+            zip.closeEntry();
+        }
+    }
+
+    private void writeManifest(UUID patientId, OutputStream out, Map<UUID, String> failures) throws IOException {
+        int pageSize = scanProperties.getExport().getPageSize();
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        json.useDefaultPrettyPrinter();
+
+        json.writeStartObject();
+        json.writeStringField("patientId", patientId.toString());
+        json.writeStringField("exportedAt", OffsetDateTime.now().toString());
+
+        json.writeArrayFieldStart("scans");
+        UUID after = FIRST;
+        List<EcgScan> scans;
+        do {
+            scans = scanRepository.findByPatientIdAfter(patientId, after, PageRequest.of(0, pageSize));
+            for (EcgScan scan : scans) {
+                json.writeStartObject();
+                if (failures.containsKey(scan.getScanId())) {
+                    json.writeStringField("error", failures.get(scan.getScanId()));
+                } else {
+                    json.writeStringField("file", entryName(scan));
+                }
+                json.writeFieldName("scan");
+                objectMapper.writeValue(json, toScanResponse(scan));
+                json.writeEndObject();
+                after = scan.getScanId();
+            }
+        } while (scans.size() == pageSize);
+        json.writeEndArray();
+
+        json.writeArrayFieldStart("predictions");
+        after = FIRST;
+        List<MlResult> results;
+        do {
+            results = mlResultRepository.findByPatientIdAfter(patientId, after, PageRequest.of(0, pageSize));
+            for (MlResult result : results) {
+                objectMapper.writeValue(json, toResultResponse(result));
+                after = result.getResultId();
+            }
+        } while (results.size() == pageSize);
+        json.writeEndArray();
+
+        json.writeEndObject();
+        json.flush();
+    }
+
+    private String entryName(EcgScan scan) {
+        Object original = scan.getMetadata() != null ? scan.getMetadata().get("originalFilename") : null;
+        String name = original != null ? original.toString() : "scan";
+        // Keep only the file name so entries cannot escape the archive when extracted
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+        return "scans/" + scan.getScanId() + "-" + name;
+    }
+
+    private ScanResponse toScanResponse(EcgScan scan) {
+        return ScanResponse.builder()
+                .scanId(scan.getScanId())
+                .patientId(scan.getPatient().getPatientId())
+                .storageUri(scan.getStorageUri())
+                .mimetype(scan.getMimetype())
+                .checksum(scan.getChecksum())
+                .sizeBytes(scan.getSizeBytes())
+                .metadata(scan.getMetadata())
+                .uploadedBy(scan.getUploadedBy() != null ? scan.getUploadedBy().getDoctorId() : null)
+                .uploadedAt(scan.getUploadedAt())
+                .build();
+    }
+
+    private MlResultResponse toResultResponse(MlResult result) {
+        Object confidence = result.getClassProbs().get(result.getPredictedLabel());
+        return MlResultResponse.builder()
+                .resultId(result.getResultId())
+                .scanId(result.getScan() != null ? result.getScan().getScanId() : null)
+                .patientId(result.getPatient().getPatientId())
+                .modelVersion(result.getModelVersion())
+                .predictedLabel(result.getPredictedLabel())
+                .confidenceScore(confidence instanceof Number number ? BigDecimal.valueOf(number.doubleValue()) : null)
+                .classProbabilities(result.getClassProbs())
+                .threshold(result.getThreshold())
+                .explanationUri(result.getExplanationUri())
+                .createdBy(result.getCreatedBy() != null ? result.getCreatedBy().getDoctorId() : null)
+                .createdAt(result.getCreatedAt())
+                .build();
+    }
+
+    private void closeQuietly(Future<InputStream> content) {
+        try {
+            content.get().close();
+        } catch (Exception e) {
+            // Already reported, or nothing was opened
+        }
+    }
+
+    private record PendingScan(EcgScan scan, Future<InputStream> content) {
+    }
+}
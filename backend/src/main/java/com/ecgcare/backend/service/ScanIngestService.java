@@ -0,0 +1,269 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.ScanProperties;
+import com.ecgcare.backend.dto.response.BatchUploadResponse;
+import com.ecgcare.backend.entity.Doctor;
+import com.ecgcare.backend.entity.EcgScan;
+import com.ecgcare.backend.entity.Patient;
+import com.ecgcare.backend.entity.ScanBlob;
+import com.ecgcare.backend.exception.BadRequestException;
+import com.ecgcare.backend.exception.ForbiddenException;
+import com.ecgcare.backend.exception.NotFoundException;
+import com.ecgcare.backend.repository.DoctorRepository;
+import com.ecgcare.backend.repository.PatientAccessRepository;
+import com.ecgcare.backend.repository.PatientRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Batch ingestion of many scans for one patient: the access check and lookups happen once,
+ * object-store writes fan out over a bounded worker pool, and the scan rows and audit entries
+ * are inserted in one batched transaction.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScanIngestService {
+    private final PatientRepository patientRepository;
+    private final DoctorRepository doctorRepository;
+    private final PatientAccessRepository patientAccessRepository;
+    private final ScanService scanService;
+    private final ScanProperties scanProperties;
+
+    private ExecutorService workers;
+
+    private record IngestItem(String filename, String mimetype, long size, ScanBlobService.BlobSource source) {
+    }
+
+    private record StoredItem(ScanService.StoredContent content, String error) {
+    }
+
+    @PostConstruct
+    void startWorkers() {
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(scanProperties.getIngest().getWorkerThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "scan-ingest-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stopWorkers() {
+        workers.shutdown();
+    }
+
+    public BatchUploadResponse ingest(UUID patientId, UUID doctorId, List<MultipartFile> files, MultipartFile archive,
+            String notes, Boolean predict) {
+        Patient patient = patientRepository.findById(patientId)
+                .orElseThrow(() -> new NotFoundException("Patient not found"));
+
+        // Check access once for the whole batch
+        patientAccessRepository.findRoleByPatientIdAndDoctorId(patientId, doctorId)
+                .orElseThrow(() -> new ForbiddenException("No access to this patient"));
+
+        Doctor doctor = doctorRepository.findById(doctorId)
+                .orElseThrow(() -> new NotFoundException("Doctor not found"));
+
+        List<Path> extracted = new ArrayList<>();
+        try {
+            List<IngestItem> items = new ArrayList<>();
+            if (files != null) {
+                for (MultipartFile file : files) {
+                    items.add(new IngestItem(file.getOriginalFilename(), file.getContentType(), file.getSize(),
+                            file::getInputStream));
+                }
+            }
+            if (archive != null && !archive.isEmpty()) {
+                items.addAll(extractArchive(archive, extracted));
+            }
+            if (items.isEmpty()) {
+                throw new BadRequestException("No files provided");
+            }
+            if (items.size() > scanProperties.getIngest().getMaxFiles()) {
+                throw new BadRequestException("Too many files; at most " + scanProperties.getIngest().getMaxFiles()
+                        + " per batch");
+            }
+
+            List<StoredItem> stored = storeAll(items);
+            return recordAll(patient, doctor, items, stored, notes, predict);
+        } finally {
+            for (Path path : extracted) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Failed to delete extracted file {}", path, e);
+                }
+            }
+        }
+    }
+
+    // Hashes and stores every item on the worker pool; per-item failures are reported, not thrown
+    private List<StoredItem> storeAll(List<IngestItem> items) {
+        List<Future<StoredItem>> futures = new ArrayList<>(items.size());
+        for (IngestItem item : items) {
+            futures.add(workers.submit(() -> store(item)));
+        }
+
+        List<StoredItem> stored = new ArrayList<>(items.size());
+        for (Future<StoredItem> future : futures) {
+            try {
+                stored.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Batch upload interrupted");
+            } catch (Exception e) {
+                stored.add(new StoredItem(null, e.getMessage()));
+            }
+        }
+        return stored;
+    }
+
+    private StoredItem store(IngestItem item) {
+        if (item.size() == 0) {
+            return new StoredItem(null, "File is empty");
+        }
+        if (item.mimetype() == null || !item.mimetype().startsWith("image/")) {
+            return new StoredItem(null, "Invalid file type. Only images are allowed.");
+        }
+        try {
+            return new StoredItem(scanService.storeContent(item.mimetype(), item.size(), item.source()), null);
+        } catch (Exception e) {
+            log.error("Failed to store {} in batch upload", item.filename(), e);
+            return new StoredItem(null, "Failed to store file: " + e.getMessage());
+        }
+    }
+
+    private BatchUploadResponse recordAll(Patient patient, Doctor doctor, List<IngestItem> items,
+            List<StoredItem> stored, String notes, Boolean predict) {
+        List<ScanBlob> blobs = new ArrayList<>();
+        List<String> mimetypes = new ArrayList<>();
+        List<Map<String, Object>> metadata = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            ScanService.StoredContent content = stored.get(i).content();
+            if (content == null) {
+                continue;
+            }
+            Map<String, Object> scanMetadata = new HashMap<>();
+            if (notes != null && !notes.isEmpty()) {
+                scanMetadata.put("notes", notes);
+            }
+            if (items.get(i).filename() != null) {
+                scanMetadata.put("originalFilename", items.get(i).filename());
+            }
+            if (content.normalization() != null) {
+                scanMetadata.put("normalization", content.normalization());
+            }
+            blobs.add(content.blob());
+            mimetypes.add(content.mimetype());
+            metadata.add(scanMetadata);
+        }
+
+        List<EcgScan> scans = List.of();
+        if (!blobs.isEmpty()) {
+            try {
+                scans = scanService.recordScans(patient, doctor, blobs, mimetypes, metadata, predict);
+            } catch (RuntimeException e) {
+                // Give back the references taken by the workers so the objects do not leak
+                stored.stream()
+                        .filter(item -> item.content() != null)
+                        .forEach(item -> scanService.releaseContent(item.content().blob().getObjectKey(),
+                                item.content().normalization()));
+                throw e;
+            }
+        }
+
+        List<BatchUploadResponse.FileResult> results = new ArrayList<>(items.size());
+        int next = 0;
+        for (int i = 0; i < items.size(); i++) {
+            StoredItem item = stored.get(i);
+            if (item.content() == null) {
+                results.add(BatchUploadResponse.FileResult.builder()
+                        .filename(items.get(i).filename())
+                        .status("failed")
+                        .error(item.error())
+                        .build());
+                continue;
+            }
+            EcgScan scan = scans.get(next++);
+            results.add(BatchUploadResponse.FileResult.builder()
+                    .filename(items.get(i).filename())
+                    .status("created")
+                    .scanId(scan.getScanId())
+                    .checksum(scan.getChecksum())
+                    .sizeBytes(scan.getSizeBytes())
+                    .build());
+        }
+
+        return BatchUploadResponse.builder()
+                .patientId(patient.getPatientId())
+                .total(items.size())
+                .succeeded(scans.size())
+                .failed(items.size() - scans.size())
+                .results(results)
+                .build();
+    }
+
+    /**
+     * Extracts archive entries to temporary files, capping each entry's size so a crafted
+     * archive cannot exhaust the disk.
+     */
+    private List<IngestItem> extractArchive(MultipartFile archive, List<Path> extracted) {
+        long maxEntrySize = scanProperties.getIngest().getMaxEntrySize();
+        List<IngestItem> items = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(archive.getInputStream())) {
+            ZipEntry entry;
+            byte[] buffer = new byte[64 * 1024];
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = Path.of(entry.getName()).getFileName().toString();
+                if (entry.isDirectory() || name.startsWith(".") || entry.getName().startsWith("__MACOSX")) {
+                    continue;
+                }
+                if (items.size() >= scanProperties.getIngest().getMaxFiles()) {
+                    throw new BadRequestException("Too many files; at most "
+                            + scanProperties.getIngest().getMaxFiles() + " per batch");
+                }
+
+                Path path = Files.createTempFile("scan-ingest-", ".tmp");
+                extracted.add(path);
+                long size = 0;
+                try (OutputStream out = Files.newOutputStream(path)) {
+                    int read;
+                    while ((read = zip.read(buffer)) != -1) {
+                        size += read;
+                        if (size > maxEntrySize) {
+                            throw new BadRequestException("Archive entry " + name + " exceeds the size limit");
+                        }
+                        out.write(buffer, 0, read);
+                    }
+                }
+                items.add(new IngestItem(name, URLConnection.guessContentTypeFromName(name), size,
+                        () -> Files.newInputStream(path)));
+            }
+        } catch (IOException e) {
+            throw new BadRequestException("Invalid ZIP archive: " + e.getMessage());
+        }
+        return items;
+    }
+}
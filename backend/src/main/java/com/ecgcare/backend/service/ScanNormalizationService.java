@@ -0,0 +1,80 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.ScanProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Ingest-time normalization: uncompressed or bulky formats (BMP, TIFF) are decoded and
+ * re-encoded as lossless PNG without their embedded metadata.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScanNormalizationService {
+    private final ImageService imageService;
+    private final ScanProperties scanProperties;
+
+    private static final String NORMALIZED_MIMETYPE = "image/png";
+
+    public record NormalizedImage(Path file, long sizeBytes, String mimetype, int width, int height) {
+    }
+
+    /**
+     * Writes the normalized image to a temporary file the caller must delete. Empty when the format
+     * is not normalized, cannot be decoded, has more than one page, or would not get smaller; the
+     * upload is then stored as is.
+     */
+    public Optional<NormalizedImage> normalize(String mimetype, long size, ScanBlobService.BlobSource source) {
+        ScanProperties.Normalization config = scanProperties.getNormalization();
+        if (!config.isEnabled() || !config.getFormats().contains(mimetype.toLowerCase(Locale.ROOT))) {
+            return Optional.empty();
+        }
+
+        Path file = null;
+        try {
+            BufferedImage image;
+            try (InputStream in = source.open()) {
+                image = imageService.read(in, config.getMaxPixels());
+            }
+            file = Files.createTempFile("scan-normalized-", ".png");
+            try (OutputStream out = Files.newOutputStream(file)) {
+                imageService.writePng(image, out);
+            }
+
+            long normalizedSize = Files.size(file);
+            if (normalizedSize >= size) {
+                log.debug("Keeping {} upload as is; PNG would be {} bytes vs {}", mimetype, normalizedSize, size);
+                deleteQuietly(file);
+                return Optional.empty();
+            }
+            return Optional.of(new NormalizedImage(file, normalizedSize, NORMALIZED_MIMETYPE, image.getWidth(),
+                    image.getHeight()));
+        } catch (Exception e) {
+            log.warn("Storing {} upload as is; normalization failed: {}", mimetype, e.getMessage());
+            deleteQuietly(file);
+            return Optional.empty();
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete temporary file {}", file, e);
+        }
+    }
+}
@@ -1,21 +1,22 @@
 package com.ecgcare.backend.service;
 
+import com.ecgcare.backend.config.ScanProperties;
+import com.ecgcare.backend.dto.response.PresignedUrlResponse;
 import com.ecgcare.backend.dto.response.ScanResponse;
 import com.ecgcare.backend.entity.Doctor;
 import com.ecgcare.backend.entity.EcgScan;
 import com.ecgcare.backend.entity.Patient;
+import com.ecgcare.backend.entity.ScanBlob;
+import com.ecgcare.backend.event.ScanUploadedEvent;
 import com.ecgcare.backend.exception.ForbiddenException;
 import com.ecgcare.backend.exception.NotFoundException;
 import com.ecgcare.backend.repository.DoctorRepository;
 import com.ecgcare.backend.repository.EcgScanRepository;
 import com.ecgcare.backend.repository.PatientAccessRepository;
 import com.ecgcare.backend.repository.PatientRepository;
-import io.minio.MinioClient;
-import io.minio.PutObjectArgs;
-import io.minio.GetObjectArgs;
-import io.minio.RemoveObjectArgs;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -24,10 +25,14 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -39,12 +44,15 @@ public class ScanService {
     private final PatientRepository patientRepository;
     private final DoctorRepository doctorRepository;
     private final PatientAccessRepository patientAccessRepository;
-    private final MinioClient minioClient;
-    private final com.ecgcare.backend.config.MinIOProperties minIOProperties;
     private final AuditService auditService;
+    private final ScanBlobService scanBlobService;
+    private final ScanNormalizationService scanNormalizationService;
+    private final ScanProperties scanProperties;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional
-    public ScanResponse uploadScan(MultipartFile file, UUID patientId, UUID doctorId, Map<String, Object> metadata) {
+    public ScanResponse uploadScan(MultipartFile file, UUID patientId, UUID doctorId, Map<String, Object> metadata,
+            Boolean predict) {
         Patient patient = patientRepository.findById(patientId)
                 .orElseThrow(() -> new NotFoundException("Patient not found"));
 
@@ -66,50 +74,168 @@ public class ScanService {
                 throw new IllegalArgumentException("Invalid file type. Only images are allowed.");
             }
 
-            // Generate storage URI
-            UUID scanId = UUID.randomUUID();
-            String storageUri = String.format("%s/%s/%s", patientId, scanId, file.getOriginalFilename());
+            StoredContent content = storeContent(mimetype, file.getSize(), file::getInputStream);
 
-            // Upload to MinIO
-            minioClient.putObject(PutObjectArgs.builder()
-                    .bucket(minIOProperties.getBucket())
-                    .object(storageUri)
-                    .stream(file.getInputStream(), file.getSize(), -1)
-                    .contentType(mimetype)
-                    .build());
-
-            // Calculate checksum (simplified)
-            String checksum = "sha256:" + UUID.randomUUID().toString();
+            Map<String, Object> scanMetadata = metadata != null ? new HashMap<>(metadata) : new HashMap<>();
+            if (file.getOriginalFilename() != null) {
+                scanMetadata.put("originalFilename", file.getOriginalFilename());
+            }
+            if (content.normalization() != null) {
+                scanMetadata.put("normalization", content.normalization());
+            }
 
-            // Save metadata
-            EcgScan scan = EcgScan.builder()
-                    .patient(patient)
-                    .storageUri(storageUri)
-                    .mimetype(mimetype)
-                    .uploadedBy(doctor)
-                    .checksum(checksum)
-                    .metadata(metadata != null ? metadata : new HashMap<>())
-                    .build();
-            scan = scanRepository.save(scan);
-
-            auditService.logAction("upload", "scan", scan.getScanId(), doctorId, null, null);
-
-            return ScanResponse.builder()
-                    .scanId(scan.getScanId())
-                    .patientId(patientId)
-                    .storageUri(storageUri)
-                    .mimetype(mimetype)
-                    .checksum(checksum)
-                    .metadata(scan.getMetadata())
-                    .uploadedBy(doctorId)
-                    .uploadedAt(scan.getUploadedAt())
-                    .build();
+            return recordScan(patient, doctor, content.blob(), content.mimetype(), scanMetadata, predict);
         } catch (Exception e) {
             log.error("Failed to upload scan", e);
             throw new RuntimeException("Failed to upload scan: " + e.getMessage());
         }
     }
 
+    /**
+     * The blob a scan's content is stored in, and what normalization changed, if anything.
+     */
+    public record StoredContent(ScanBlob blob, String mimetype, Map<String, Object> normalization) {
+    }
+
+    /**
+     * Normalizes the image when its format is configured for it and takes a reference on the
+     * stored blob. The upload is hashed first so content already in storage is not sent again.
+     * The original is stored alongside the normalized image only when configured.
+     */
+    public StoredContent storeContent(String mimetype, long size, ScanBlobService.BlobSource source) throws Exception {
+        String originalChecksum;
+        try (InputStream in = source.open()) {
+            originalChecksum = scanBlobService.checksum(in);
+        }
+
+        Optional<ScanNormalizationService.NormalizedImage> normalized =
+                scanNormalizationService.normalize(mimetype, size, source);
+        if (normalized.isEmpty()) {
+            return new StoredContent(scanBlobService.acquire(originalChecksum, size, mimetype, source), mimetype, null);
+        }
+
+        ScanNormalizationService.NormalizedImage image = normalized.get();
+        try {
+            String checksum;
+            try (InputStream in = Files.newInputStream(image.file())) {
+                checksum = scanBlobService.checksum(in);
+            }
+
+            Map<String, Object> details = new HashMap<>();
+            details.put("originalMimetype", mimetype);
+            details.put("originalSizeBytes", size);
+            details.put("originalChecksum", originalChecksum);
+            details.put("width", image.width());
+            details.put("height", image.height());
+            details.put("sizeBytes", image.sizeBytes());
+            details.put("savedBytes", size - image.sizeBytes());
+
+            ScanBlob original = null;
+            if (scanProperties.getNormalization().isKeepOriginal()) {
+                original = scanBlobService.acquire(originalChecksum, size, mimetype, source);
+                details.put("originalObjectKey", original.getObjectKey());
+            }
+            try {
+                ScanBlob blob = scanBlobService.acquire(checksum, image.sizeBytes(), image.mimetype(),
+                        () -> Files.newInputStream(image.file()));
+                return new StoredContent(blob, image.mimetype(), details);
+            } catch (Exception e) {
+                if (original != null) {
+                    scanBlobService.release(original.getObjectKey());
+                }
+                throw e;
+            }
+        } finally {
+            Files.deleteIfExists(image.file());
+        }
+    }
+
+    /**
+     * Drops the scan's references to its stored content, including a kept original.
+     */
+    public void releaseContent(EcgScan scan) {
+        releaseContent(scan.getStorageUri(), scan.getMetadata() != null ? scan.getMetadata().get("normalization") : null);
+    }
+
+    public void releaseContent(String objectKey, Object normalization) {
+        scanBlobService.release(objectKey);
+        if (normalization instanceof Map<?, ?> details && details.get("originalObjectKey") instanceof String originalKey) {
+            scanBlobService.release(originalKey);
+        }
+    }
+
+    /**
+     * Saves the scan row for content already stored as a blob and audits the upload.
+     * {@code predict} starts a prediction once the row is committed; when null
+     * the doctor's eager inference preference decides.
+     */
+    @Transactional
+    public ScanResponse recordScan(Patient patient, Doctor doctor, ScanBlob blob, String mimetype,
+            Map<String, Object> metadata, Boolean predict) {
+        EcgScan scan = EcgScan.builder()
+                .patient(patient)
+                .storageUri(blob.getObjectKey())
+                .mimetype(mimetype)
+                .uploadedBy(doctor)
+                .checksum(blob.getChecksum())
+                .sizeBytes(blob.getSizeBytes())
+                .metadata(metadata)
+                .build();
+        scan = scanRepository.save(scan);
+
+        auditService.logAction("upload", "scan", scan.getScanId(), doctor.getDoctorId(), null, null);
+        eventPublisher.publishEvent(new ScanUploadedEvent(scan.getScanId(), patient.getPatientId(),
+                doctor.getDoctorId(), scan.getStorageUri(), mimetype, eagerInference(doctor, predict)));
+
+        return ScanResponse.builder()
+                .scanId(scan.getScanId())
+                .patientId(patient.getPatientId())
+                .storageUri(scan.getStorageUri())
+                .mimetype(mimetype)
+                .checksum(scan.getChecksum())
+                .sizeBytes(scan.getSizeBytes())
+                .metadata(scan.getMetadata())
+                .uploadedBy(doctor.getDoctorId())
+                .uploadedAt(scan.getUploadedAt())
+                .build();
+    }
+
+    /**
+     * Saves scan rows for a batch of stored blobs in one transaction, with JDBC-batched
+     * inserts and a single batched audit write.
+     */
+    @Transactional
+    public List<EcgScan> recordScans(Patient patient, Doctor doctor, List<ScanBlob> blobs, List<String> mimetypes,
+            List<Map<String, Object>> metadata, Boolean predict) {
+        List<EcgScan> scans = new ArrayList<>(blobs.size());
+        for (int i = 0; i < blobs.size(); i++) {
+            ScanBlob blob = blobs.get(i);
+            scans.add(EcgScan.builder()
+                    .patient(patient)
+                    .storageUri(blob.getObjectKey())
+                    .mimetype(mimetypes.get(i))
+                    .uploadedBy(doctor)
+                    .checksum(blob.getChecksum())
+                    .sizeBytes(blob.getSizeBytes())
+                    .metadata(metadata.get(i))
+                    .build());
+        }
+        scans = scanRepository.saveAll(scans);
+
+        auditService.logActions("upload", "scan", scans.stream().map(EcgScan::getScanId).toList(),
+                doctor.getDoctorId());
+        boolean eager = eagerInference(doctor, predict);
+        for (EcgScan scan : scans) {
+            eventPublisher.publishEvent(new ScanUploadedEvent(scan.getScanId(), patient.getPatientId(),
+                    doctor.getDoctorId(), scan.getStorageUri(), scan.getMimetype(), eager));
+        }
+        return scans;
+    }
+
+    private boolean eagerInference(Doctor doctor, Boolean predict) {
+        return predict != null ? predict : Boolean.TRUE.equals(doctor.getEagerInference());
+    }
+
     public ScanResponse getScan(UUID scanId, UUID doctorId) {
         EcgScan scan = scanRepository.findById(scanId)
                 .orElseThrow(() -> new NotFoundException("Scan not found"));
@@ -124,6 +250,7 @@ public class ScanService {
                 .storageUri(scan.getStorageUri())
                 .mimetype(scan.getMimetype())
                 .checksum(scan.getChecksum())
+                .sizeBytes(scan.getSizeBytes() != null ? scan.getSizeBytes() : backfillSize(scan))
                 .metadata(scan.getMetadata())
                 .uploadedBy(scan.getUploadedBy() != null ? scan.getUploadedBy().getDoctorId() : null)
                 .uploadedAt(scan.getUploadedAt())
@@ -131,6 +258,13 @@ public class ScanService {
     }
 
     public InputStream downloadScan(UUID scanId, UUID doctorId) {
+        return downloadScan(scanId, doctorId, 0, null);
+    }
+
+    /**
+     * Opens the scan content starting at {@code offset}; a null {@code length} reads to the end.
+     */
+    public InputStream downloadScan(UUID scanId, UUID doctorId, long offset, Long length) {
         EcgScan scan = scanRepository.findById(scanId)
                 .orElseThrow(() -> new NotFoundException("Scan not found"));
 
@@ -139,16 +273,62 @@ public class ScanService {
                 .orElseThrow(() -> new ForbiddenException("No access to this scan"));
 
         try {
-            return minioClient.getObject(GetObjectArgs.builder()
-                    .bucket(minIOProperties.getBucket())
-                    .object(scan.getStorageUri())
-                    .build());
+            return scanBlobService.open(scan.getStorageUri(), offset, length);
         } catch (Exception e) {
             log.error("Failed to download scan", e);
             throw new RuntimeException("Failed to download scan: " + e.getMessage());
         }
     }
 
+    /**
+     * Issues a short-lived presigned URL so the client can fetch the scan from the object store
+     * directly. Empty when presigned downloads are disabled.
+     */
+    public Optional<PresignedUrlResponse> presignDownload(UUID scanId, UUID doctorId) {
+        if (!scanProperties.getDownload().isPresignedEnabled()) {
+            return Optional.empty();
+        }
+
+        EcgScan scan = scanRepository.findById(scanId)
+                .orElseThrow(() -> new NotFoundException("Scan not found"));
+
+        // Check access
+        patientAccessRepository.findRoleByPatientIdAndDoctorId(scan.getPatient().getPatientId(), doctorId)
+                .orElseThrow(() -> new ForbiddenException("No access to this scan"));
+
+        // Storage only holds ciphertext for encrypted blobs, so those are served through the API
+        if (scanBlobService.isEncrypted(scan.getStorageUri())) {
+            return Optional.empty();
+        }
+
+        try {
+            Duration ttl = scanProperties.getDownload().getPresignedTtl();
+            String filename = "scan." + scan.getMimetype().split("/")[1];
+            // Backends clients cannot reach directly have no URLs to hand out
+            return scanBlobService.presignedUrl(scan.getStorageUri(), ttl, scan.getMimetype(), filename)
+                    .map(url -> PresignedUrlResponse.builder()
+                            .scanId(scanId)
+                            .url(url)
+                            .expiresAt(OffsetDateTime.now().plus(ttl))
+                            .build());
+        } catch (Exception e) {
+            log.error("Failed to presign scan download", e);
+            throw new RuntimeException("Failed to presign scan download: " + e.getMessage());
+        }
+    }
+
+    // Scans uploaded before sizes were recorded get theirs from the object store once
+    private Long backfillSize(EcgScan scan) {
+        try {
+            scan.setSizeBytes(scanBlobService.objectSize(scan.getStorageUri()));
+            scanRepository.save(scan);
+            return scan.getSizeBytes();
+        } catch (Exception e) {
+            log.warn("Failed to resolve size of scan {}", scan.getScanId(), e);
+            return null;
+        }
+    }
+
     public com.ecgcare.backend.dto.response.PageResponse<ScanResponse> listPatientScans(UUID patientId, UUID doctorId,
             int page, int size) {
         // Check access
@@ -189,15 +369,8 @@ public class ScanService {
         patientAccessRepository.findRoleByPatientIdAndDoctorId(scan.getPatient().getPatientId(), doctorId)
                 .orElseThrow(() -> new ForbiddenException("No access to this scan"));
 
-        try {
-            // Delete from MinIO
-            minioClient.removeObject(RemoveObjectArgs.builder()
-                    .bucket(minIOProperties.getBucket())
-                    .object(scan.getStorageUri())
-                    .build());
-        } catch (Exception e) {
-            log.error("Failed to delete scan from MinIO", e);
-        }
+        // Drop this scan's reference; the object is removed once no scan uses it
+        releaseContent(scan);
 
         scanRepository.delete(scan);
         auditService.logAction("delete", "scan", scanId, doctorId, null, null);
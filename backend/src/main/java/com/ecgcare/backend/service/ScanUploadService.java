@@ -0,0 +1,432 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.ScanProperties;
+import com.ecgcare.backend.dto.request.UploadInitiateRequest;
+import com.ecgcare.backend.dto.response.ScanResponse;
+import com.ecgcare.backend.dto.response.UploadPartResponse;
+import com.ecgcare.backend.dto.response.UploadSessionResponse;
+import com.ecgcare.backend.entity.Doctor;
+import com.ecgcare.backend.entity.Patient;
+import com.ecgcare.backend.entity.ScanBlob;
+import com.ecgcare.backend.entity.UploadPart;
+import com.ecgcare.backend.entity.UploadPartId;
+import com.ecgcare.backend.entity.UploadSession;
+import com.ecgcare.backend.entity.UploadSession.UploadStatus;
+import com.ecgcare.backend.event.JobStatusEvent;
+import com.ecgcare.backend.exception.BadRequestException;
+import com.ecgcare.backend.exception.ForbiddenException;
+import com.ecgcare.backend.exception.NotFoundException;
+import com.ecgcare.backend.repository.DoctorRepository;
+import com.ecgcare.backend.repository.PatientAccessRepository;
+import com.ecgcare.backend.repository.PatientRepository;
+import com.ecgcare.backend.repository.UploadPartRepository;
+import com.ecgcare.backend.repository.UploadSessionRepository;
+import com.ecgcare.backend.storage.ScanStorage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Resumable uploads: a session is initiated for a file, numbered chunks are PUT independently
+ * (in any order, in parallel, and retried as needed) and the session is then completed, which
+ * assembles the parts server-side in MinIO into a content-addressed scan blob. With encryption
+ * enabled, parts are sealed with a DEK of the session as they are stored, so content is never at
+ * rest in plaintext, and are assembled by streaming them through the ciphers instead.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ScanUploadService {
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadPartRepository uploadPartRepository;
+    private final PatientRepository patientRepository;
+    private final DoctorRepository doctorRepository;
+    private final PatientAccessRepository patientAccessRepository;
+    private final ScanBlobService scanBlobService;
+    private final ScanService scanService;
+    private final ScanProperties scanProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private static final String PART_PREFIX = "uploads/";
+
+    public UploadSessionResponse initiate(UploadInitiateRequest request, UUID doctorId) {
+        Patient patient = patientRepository.findById(request.getPatientId())
+                .orElseThrow(() -> new NotFoundException("Patient not found"));
+
+        // Check access
+        patientAccessRepository.findRoleByPatientIdAndDoctorId(patient.getPatientId(), doctorId)
+                .orElseThrow(() -> new ForbiddenException("No access to this patient"));
+
+        Doctor doctor = doctorRepository.findById(doctorId)
+                .orElseThrow(() -> new NotFoundException("Doctor not found"));
+
+        if (!request.getMimetype().startsWith("image/")) {
+            throw new BadRequestException("Invalid file type. Only images are allowed.");
+        }
+
+        ScanProperties.Upload config = scanProperties.getUpload();
+        long chunkSize = request.getChunkSize() != null ? request.getChunkSize() : config.getDefaultChunkSize();
+        chunkSize = Math.max(config.getMinChunkSize(), Math.min(config.getMaxChunkSize(), chunkSize));
+        long totalParts = (request.getTotalSize() + chunkSize - 1) / chunkSize;
+        if (totalParts > config.getMaxParts()) {
+            throw new BadRequestException("File too large for the chunk size; use larger chunks");
+        }
+
+        EncryptionService.EncryptedData partKey;
+        try {
+            partKey = scanBlobService.newPartKey();
+        } catch (Exception e) {
+            log.error("Failed to create the key for an upload", e);
+            throw new RuntimeException("Failed to initiate upload: " + e.getMessage());
+        }
+
+        Map<String, Object> metadata = new HashMap<>();
+        if (request.getMetadata() != null && !request.getMetadata().isEmpty()) {
+            metadata.put("notes", request.getMetadata());
+        }
+        metadata.put("originalFilename", request.getFilename());
+
+        UploadSession session = uploadSessionRepository.save(UploadSession.builder()
+                .patient(patient)
+                .doctor(doctor)
+                .filename(request.getFilename())
+                .mimetype(request.getMimetype())
+                .totalSize(request.getTotalSize())
+                .chunkSize(chunkSize)
+                .totalParts((int) totalParts)
+                .status(UploadStatus.active)
+                .metadata(metadata)
+                .expiresAt(OffsetDateTime.now().plus(config.getSessionTtl()))
+                .dekEnc(partKey != null ? partKey.data() : null)
+                .dekIv(partKey != null ? partKey.iv() : null)
+                .dekTag(partKey != null ? partKey.tag() : null)
+                .build());
+        publishStatus(session, Map.of("totalParts", session.getTotalParts()));
+
+        return toResponse(session, List.of());
+    }
+
+    public UploadSessionResponse getSession(UUID uploadId, UUID doctorId) {
+        UploadSession session = findOwnedSession(uploadId, doctorId);
+        return toResponse(session, uploadPartRepository.findByUploadId(uploadId));
+    }
+
+    /**
+     * Stores one chunk. Re-sending a part replaces it, so clients can retry any part freely.
+     * No transaction is held while the bytes are streamed to MinIO. Every PUT is written to its own
+     * object and only recorded while the session is still active, so parts frozen by
+     * {@link #complete} never change underneath it.
+     */
+    public UploadPartResponse uploadPart(UUID uploadId, int partNumber, InputStream body, long contentLength,
+            UUID doctorId) {
+        UploadSession session = findOwnedSession(uploadId, doctorId);
+        requireAccess(session, doctorId);
+        requireActive(session);
+
+        if (partNumber < 1 || partNumber > session.getTotalParts()) {
+            throw new BadRequestException("Part number must be between 1 and " + session.getTotalParts());
+        }
+        long expectedSize = expectedPartSize(session, partNumber);
+        if (contentLength != expectedSize) {
+            throw new BadRequestException("Part " + partNumber + " must be exactly " + expectedSize + " bytes");
+        }
+
+        String objectKey = partKey(uploadId, partNumber) + "-" + UUID.randomUUID();
+        String checksum;
+        try {
+            checksum = scanBlobService.putPart(objectKey, body, expectedSize, partKey(session));
+        } catch (Exception e) {
+            log.error("Failed to store part {} of upload {}", partNumber, uploadId, e);
+            removeObjects(List.of(objectKey));
+            throw new RuntimeException("Failed to store upload part: " + e.getMessage());
+        }
+
+        String replaced;
+        try {
+            replaced = transactionTemplate.execute(status -> {
+                UploadSession locked = uploadSessionRepository.findByIdForUpdate(uploadId)
+                        .orElseThrow(() -> new NotFoundException("Upload not found"));
+                requireActive(locked);
+                String previous = uploadPartRepository.findById(new UploadPartId(uploadId, partNumber))
+                        .map(this::partObjectKey)
+                        .orElse(null);
+                uploadPartRepository.save(UploadPart.builder()
+                        .uploadSession(locked)
+                        .partNumber(partNumber)
+                        .sizeBytes(expectedSize)
+                        .checksum(checksum)
+                        .objectKey(objectKey)
+                        .build());
+                return previous;
+            });
+        } catch (RuntimeException e) {
+            removeObjects(List.of(objectKey));
+            throw e;
+        }
+        if (replaced != null) {
+            removeObjects(List.of(replaced));
+        }
+
+        return UploadPartResponse.builder()
+                .partNumber(partNumber)
+                .sizeBytes(expectedSize)
+                .checksum(checksum)
+                .build();
+    }
+
+    private record Frozen(List<String> partKeys, OffsetDateTime expiresAt) {
+    }
+
+    /**
+     * Verifies every part is present and moves the session to completing, which freezes its parts.
+     * The assembled content is then hashed by streaming the parts back in order and composed into
+     * the scan blob unless identical content is already stored. On failure the session is reopened.
+     * A completing session expires after {@code completing-timeout} rather than its own TTL, so the
+     * cleanup job does not remove the parts while they are being assembled.
+     */
+    public ScanResponse complete(UUID uploadId, UUID doctorId) {
+        UploadSession session = findOwnedSession(uploadId, doctorId);
+        requireAccess(session, doctorId);
+
+        Frozen frozen = transactionTemplate.execute(status -> {
+            UploadSession locked = uploadSessionRepository.findByIdForUpdate(uploadId)
+                    .orElseThrow(() -> new NotFoundException("Upload not found"));
+            requireActive(locked);
+            List<UploadPart> parts = uploadPartRepository.findByUploadId(uploadId);
+            if (parts.size() != locked.getTotalParts()) {
+                throw new BadRequestException("Upload incomplete: received " + parts.size() + " of "
+                        + locked.getTotalParts() + " parts");
+            }
+            OffsetDateTime expiresAt = locked.getExpiresAt();
+            locked.setStatus(UploadStatus.completing);
+            locked.setExpiresAt(OffsetDateTime.now().plus(scanProperties.getUpload().getCompletingTimeout()));
+            uploadSessionRepository.save(locked);
+            return new Frozen(parts.stream().map(this::partObjectKey).toList(), expiresAt);
+        });
+        List<String> partKeys = frozen.partKeys();
+
+        ScanResponse scan;
+        try {
+            String checksum;
+            try (InputStream assembled = scanBlobService.openParts(partKeys, partKey(session))) {
+                checksum = scanBlobService.checksum(assembled);
+            } catch (Exception e) {
+                log.error("Failed to read parts of upload {}", uploadId, e);
+                throw new RuntimeException("Failed to complete upload: " + e.getMessage());
+            }
+
+            scan = transactionTemplate.execute(status -> {
+                UploadSession locked = uploadSessionRepository.findByIdForUpdate(uploadId)
+                        .orElseThrow(() -> new NotFoundException("Upload not found"));
+                if (locked.getStatus() != UploadStatus.completing) {
+                    throw new BadRequestException("Upload is " + locked.getStatus());
+                }
+                try {
+                    ScanBlob blob = scanBlobService.acquireComposed(checksum, locked.getTotalSize(),
+                            locked.getMimetype(), partKeys, partKey(locked));
+                    ScanResponse recorded = scanService.recordScan(locked.getPatient(), locked.getDoctor(), blob,
+                            locked.getMimetype(), new HashMap<>(locked.getMetadata()), null);
+                    locked.setStatus(UploadStatus.completed);
+                    locked.setScanId(recorded.getScanId());
+                    uploadSessionRepository.save(locked);
+                    publishStatus(locked, Map.of("scanId", recorded.getScanId()));
+                    return recorded;
+                } catch (Exception e) {
+                    log.error("Failed to assemble upload {}", uploadId, e);
+                    throw new RuntimeException("Failed to complete upload: " + e.getMessage());
+                }
+            });
+        } catch (RuntimeException e) {
+            reopen(uploadId, frozen.expiresAt());
+            throw e;
+        }
+
+        removeObjects(partKeys);
+        return scan;
+    }
+
+    /**
+     * Returns a session whose completion failed to active with its original expiry, so the client
+     * can retry.
+     */
+    private void reopen(UUID uploadId, OffsetDateTime expiresAt) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> uploadSessionRepository.findByIdForUpdate(uploadId)
+                    .filter(locked -> locked.getStatus() == UploadStatus.completing)
+                    .ifPresent(locked -> {
+                        locked.setStatus(UploadStatus.active);
+                        locked.setExpiresAt(expiresAt);
+                        uploadSessionRepository.save(locked);
+                    }));
+        } catch (RuntimeException e) {
+            log.error("Failed to reopen upload {}", uploadId, e);
+        }
+    }
+
+    /**
+     * The status is checked and changed under the session's row lock, so an abort cannot overwrite
+     * a completion committed in the meantime.
+     */
+    public void abort(UUID uploadId, UUID doctorId) {
+        findOwnedSession(uploadId, doctorId);
+        transactionTemplate.executeWithoutResult(status -> {
+            UploadSession locked = uploadSessionRepository.findByIdForUpdate(uploadId)
+                    .orElseThrow(() -> new NotFoundException("Upload not found"));
+            requireActive(locked);
+            close(locked, UploadStatus.aborted);
+        });
+        removeParts(uploadId);
+    }
+
+    @Scheduled(fixedDelayString = "${scans.upload.cleanup-interval:PT15M}", initialDelayString = "PT1M")
+    public void expireStaleSessions() {
+        // Sessions left completing by a crash expire too
+        List<UploadStatus> open = List.of(UploadStatus.active, UploadStatus.completing);
+        List<UploadSession> stale = uploadSessionRepository.findByStatusInAndExpiresAtBefore(open,
+                OffsetDateTime.now());
+        for (UploadSession session : stale) {
+            UUID uploadId = session.getUploadId();
+            try {
+                // Checked again under the lock; the session may have completed or been extended since it was listed
+                Boolean expired = transactionTemplate.execute(status -> uploadSessionRepository
+                        .findByIdForUpdate(uploadId)
+                        .filter(locked -> open.contains(locked.getStatus())
+                                && locked.getExpiresAt().isBefore(OffsetDateTime.now()))
+                        .map(locked -> {
+                            close(locked, UploadStatus.expired);
+                            return true;
+                        })
+                        .orElse(false));
+                if (Boolean.TRUE.equals(expired)) {
+                    log.info("Expired upload session {}", uploadId);
+                    removeParts(uploadId);
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to expire upload session {}", uploadId, e);
+            }
+        }
+    }
+
+    // Runs under the session's row lock
+    private void close(UploadSession session, UploadStatus status) {
+        session.setStatus(status);
+        uploadSessionRepository.save(session);
+        publishStatus(session, Map.of());
+    }
+
+    /**
+     * Removes every part object of a closed session. Parts still in flight remove their own object
+     * when they find the session closed.
+     */
+    private void removeParts(UUID uploadId) {
+        try (Stream<ScanStorage.StoredObject> objects = scanBlobService.listObjects(partPrefix(uploadId))) {
+            List<String> keys = objects.map(ScanStorage.StoredObject::key).toList();
+            if (!keys.isEmpty()) {
+                removeObjects(keys);
+            }
+        } catch (Exception e) {
+            log.error("Failed to delete parts of upload {}", uploadId, e);
+        }
+    }
+
+    /**
+     * Objects that cannot be removed now are queued for the deletion worker, as nothing looks at
+     * the parts of a closed session again.
+     */
+    private void removeObjects(List<String> objectKeys) {
+        scanBlobService.removeObjects(objectKeys).forEach((objectKey, error) -> {
+            log.warn("Failed to delete upload object {}, queueing it for deletion: {}", objectKey, error);
+            try {
+                scanBlobService.scheduleDeletion(objectKey);
+            } catch (RuntimeException e) {
+                log.error("Failed to queue deletion of upload object {}", objectKey, e);
+            }
+        });
+    }
+
+    private void publishStatus(UploadSession session, Map<String, Object> details) {
+        eventPublisher.publishEvent(new JobStatusEvent(JobStatusEvent.UPLOAD, session.getUploadId(),
+                session.getDoctor().getDoctorId(), session.getStatus().name(), details));
+    }
+
+    private UploadSession findOwnedSession(UUID uploadId, UUID doctorId) {
+        UploadSession session = uploadSessionRepository.findById(uploadId)
+                .orElseThrow(() -> new NotFoundException("Upload not found"));
+        if (!session.getDoctor().getDoctorId().equals(doctorId)) {
+            throw new ForbiddenException("No access to this upload");
+        }
+        return session;
+    }
+
+    private void requireAccess(UploadSession session, UUID doctorId) {
+        // Check access; it may have been revoked since the session was initiated
+        patientAccessRepository.findRoleByPatientIdAndDoctorId(session.getPatient().getPatientId(), doctorId)
+                .orElseThrow(() -> new ForbiddenException("No access to this patient"));
+    }
+
+    private void requireActive(UploadSession session) {
+        if (session.getStatus() != UploadStatus.active) {
+            throw new BadRequestException("Upload is " + session.getStatus());
+        }
+        if (session.getExpiresAt().isBefore(OffsetDateTime.now())) {
+            throw new BadRequestException("Upload has expired");
+        }
+    }
+
+    private EncryptionService.EncryptedData partKey(UploadSession session) {
+        return session.getDekEnc() != null
+                ? new EncryptionService.EncryptedData(session.getDekEnc(), session.getDekIv(), session.getDekTag())
+                : null;
+    }
+
+    private long expectedPartSize(UploadSession session, int partNumber) {
+        if (partNumber < session.getTotalParts()) {
+            return session.getChunkSize();
+        }
+        return session.getTotalSize() - session.getChunkSize() * (session.getTotalParts() - 1);
+    }
+
+    private String partPrefix(UUID uploadId) {
+        return PART_PREFIX + uploadId + "/";
+    }
+
+    private String partKey(UUID uploadId, int partNumber) {
+        return partPrefix(uploadId) + String.format("%05d", partNumber);
+    }
+
+    // Parts recorded before each PUT had its own object live under the plain part key
+    private String partObjectKey(UploadPart part) {
+        return part.getObjectKey() != null
+                ? part.getObjectKey()
+                : partKey(part.getUploadSession().getUploadId(), part.getPartNumber());
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session, List<UploadPart> parts) {
+        return UploadSessionResponse.builder()
+                .uploadId(session.getUploadId())
+                .patientId(session.getPatient().getPatientId())
+                .filename(session.getFilename())
+                .mimetype(session.getMimetype())
+                .totalSize(session.getTotalSize())
+                .chunkSize(session.getChunkSize())
+                .totalParts(session.getTotalParts())
+                .status(session.getStatus())
+                .receivedParts(parts.stream().map(UploadPart::getPartNumber).toList())
+                .scanId(session.getScanId())
+                .createdAt(session.getCreatedAt())
+                .expiresAt(session.getExpiresAt())
+                .build();
+    }
+}
@@ -0,0 +1,178 @@
+package com.ecgcare.backend.storage;
+
+import com.ecgcare.backend.config.StorageProperties;
+import com.ecgcare.backend.util.BoundedInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Stores objects as files under a local directory, for single-node installs without an object
+ * store. Keys map to relative paths. Copies between files use {@code FileChannel.transferTo}, so
+ * composing parts stays in the kernel.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "filesystem")
+@Slf4j
+public class FilesystemScanStorage implements ScanStorage {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path root;
+
+    public FilesystemScanStorage(StorageProperties storageProperties) throws IOException {
+        this(Paths.get(storageProperties.getFilesystem().getRoot()));
+    }
+
+    FilesystemScanStorage(Path root) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        Files.createDirectories(this.root);
+    }
+
+    @Override
+    public void put(String key, InputStream content, long size, String contentType) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        // Written beside the target and moved into place, so readers never see a partial object
+        Path temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ReadableByteChannel in = Channels.newChannel(content);
+                long written = 0;
+                while (written < size) {
+                    long n = out.transferFrom(in, written, size - written);
+                    if (n <= 0) {
+                        break;
+                    }
+                    written += n;
+                }
+                if (written != size) {
+                    throw new IOException("Expected " + size + " bytes for " + key + " but got " + written);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public InputStream get(String key, long offset, Long length) throws IOException {
+        FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+            long remaining = length != null ? Math.min(length, channel.size() - offset) : channel.size() - offset;
+            return new BoundedInputStream(Channels.newInputStream(channel), Math.max(0, remaining));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) throws IOException {
+        Path file = resolve(key);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return Optional.of(new StoredObject(key, attributes.size(), attributes.lastModifiedTime().toInstant()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public Map<String, String> deleteAll(Collection<String> keys) {
+        Map<String, String> failures = new HashMap<>();
+        for (String key : keys) {
+            try {
+                delete(key);
+            } catch (IOException e) {
+                log.error("Failed to delete object {}", key, e);
+                failures.put(key, e.getMessage());
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public Stream<StoredObject> list(String prefix) throws IOException {
+        // Walk from the deepest directory the prefix names, then filter on the full key
+        int slash = prefix.lastIndexOf('/');
+        Path start = slash >= 0 ? resolve(prefix.substring(0, slash)) : root;
+        if (!Files.isDirectory(start)) {
+            return Stream.empty();
+        }
+        return Files.walk(start)
+                .filter(Files::isRegularFile)
+                .filter(file -> !file.getFileName().toString().endsWith(TEMP_SUFFIX))
+                .map(file -> root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"))
+                .filter(key -> key.startsWith(prefix))
+                .map(key -> {
+                    try {
+                        return stat(key).orElse(null);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .filter(object -> object != null);
+    }
+
+    @Override
+    public void compose(String key, List<String> sources, long size, String contentType) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                for (String source : sources) {
+                    try (FileChannel in = FileChannel.open(resolve(source), StandardOpenOption.READ)) {
+                        long position = 0;
+                        long sourceSize = in.size();
+                        while (position < sourceSize) {
+                            position += in.transferTo(position, sourceSize - position, out);
+                        }
+                    }
+                }
+                if (out.size() != size) {
+                    throw new IOException("Expected " + size + " bytes for " + key + " but got " + out.size());
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path resolve(String key) throws IOException {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IOException("Invalid object key " + key);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,76 @@
+package com.ecgcare.backend.storage;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Keeps objects on the heap. Meant for tests and benchmarks; content is lost on restart.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "memory")
+public class InMemoryScanStorage implements ScanStorage {
+    private final ConcurrentNavigableMap<String, Entry> objects = new ConcurrentSkipListMap<>();
+
+    private record Entry(byte[] data, String contentType, Instant lastModified) {
+    }
+
+    @Override
+    public void put(String key, InputStream content, long size, String contentType) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Object too large for in-memory storage");
+        }
+        byte[] data = content.readNBytes((int) size);
+        if (data.length != size) {
+            throw new IOException("Expected " + size + " bytes for " + key + " but got " + data.length);
+        }
+        objects.put(key, new Entry(data, contentType, Instant.now()));
+    }
+
+    @Override
+    public InputStream get(String key, long offset, Long length) throws IOException {
+        Entry entry = objects.get(key);
+        if (entry == null) {
+            throw new NoSuchFileException(key);
+        }
+        int from = (int) Math.min(offset, entry.data().length);
+        int count = length != null ? (int) Math.min(length, entry.data().length - from) : entry.data().length - from;
+        return new ByteArrayInputStream(entry.data(), from, count);
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) {
+        return Optional.ofNullable(objects.get(key))
+                .map(entry -> new StoredObject(key, entry.data().length, entry.lastModified()));
+    }
+
+    @Override
+    public void delete(String key) {
+        objects.remove(key);
+    }
+
+    @Override
+    public Map<String, String> deleteAll(Collection<String> keys) {
+        keys.forEach(objects::remove);
+        return Map.of();
+    }
+
+    @Override
+    public Stream<StoredObject> list(String prefix) {
+        return objects.tailMap(prefix).entrySet().stream()
+                .takeWhile(object -> object.getKey().startsWith(prefix))
+                .map(object -> new StoredObject(object.getKey(), object.getValue().data().length,
+                        object.getValue().lastModified()));
+    }
+}
@@ -0,0 +1,210 @@
+package com.ecgcare.backend.storage;
+
+import com.ecgcare.backend.config.MinIOProperties;
+import io.minio.ComposeObjectArgs;
+import io.minio.ComposeSource;
+import io.minio.GetObjectArgs;
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.http.Method;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Stores objects in the configured MinIO (or any S3-compatible) bucket.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class MinioScanStorage implements ScanStorage {
+    private final MinioClient minioClient;
+    private final MinIOProperties minIOProperties;
+
+    private volatile MinioClient presignClient;
+
+    @Override
+    public void put(String key, InputStream content, long size, String contentType) throws IOException {
+        // Streamed in fixed-size parts, so the content is never held in memory as a whole
+        call(key, () -> minioClient.putObject(PutObjectArgs.builder()
+                .bucket(minIOProperties.getBucket())
+                .object(key)
+                .stream(content, size, minIOProperties.getPartSize())
+                .contentType(contentType)
+                .build()));
+    }
+
+    @Override
+    public InputStream get(String key, long offset, Long length) throws IOException {
+        GetObjectArgs.Builder args = GetObjectArgs.builder()
+                .bucket(minIOProperties.getBucket())
+                .object(key);
+        if (offset > 0 || length != null) {
+            args.offset(offset);
+            if (length != null) {
+                args.length(length);
+            }
+        }
+        return call(key, () -> minioClient.getObject(args.build()));
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) throws IOException {
+        try {
+            StatObjectResponse stat = call(key, () -> minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(minIOProperties.getBucket())
+                    .object(key)
+                    .build()));
+            return Optional.of(new StoredObject(key, stat.size(), stat.lastModified().toInstant()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        call(key, () -> {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(minIOProperties.getBucket())
+                    .object(key)
+                    .build());
+            return null;
+        });
+    }
+
+    @Override
+    public Map<String, String> deleteAll(Collection<String> keys) {
+        Map<String, String> failures = new HashMap<>();
+        Iterable<Result<DeleteError>> results = minioClient.removeObjects(RemoveObjectsArgs.builder()
+                .bucket(minIOProperties.getBucket())
+                .objects(keys.stream().map(DeleteObject::new).toList())
+                .build());
+        // Deletion is lazy; errors are only reported while iterating
+        try {
+            for (Result<DeleteError> result : results) {
+                DeleteError error = result.get();
+                log.error("Failed to delete object {} from MinIO: {}", error.objectName(), error.message());
+                failures.put(error.objectName(), error.message());
+            }
+        } catch (Exception e) {
+            log.error("Failed to delete objects from MinIO", e);
+            keys.forEach(key -> failures.putIfAbsent(key, e.getMessage()));
+        }
+        return failures;
+    }
+
+    @Override
+    public Stream<StoredObject> list(String prefix) {
+        Iterable<Result<Item>> results = minioClient.listObjects(ListObjectsArgs.builder()
+                .bucket(minIOProperties.getBucket())
+                .prefix(prefix)
+                .recursive(true)
+                .build());
+        return StreamSupport.stream(results.spliterator(), false)
+                .map(result -> {
+                    try {
+                        Item item = result.get();
+                        return new StoredObject(item.objectName(), item.size(), item.lastModified().toInstant());
+                    } catch (Exception e) {
+                        throw new UncheckedIOException(new IOException("Failed to list objects under " + prefix, e));
+                    }
+                });
+    }
+
+    /**
+     * Assembled server-side; every source but the last must be at least 5 MiB.
+     */
+    @Override
+    public void compose(String key, List<String> sources, long size, String contentType) throws IOException {
+        call(key, () -> minioClient.composeObject(ComposeObjectArgs.builder()
+                .bucket(minIOProperties.getBucket())
+                .object(key)
+                .sources(sources.stream()
+                        .map(source -> ComposeSource.builder()
+                                .bucket(minIOProperties.getBucket())
+                                .object(source)
+                                .build())
+                        .toList())
+                .headers(Map.of("Content-Type", contentType))
+                .build()));
+    }
+
+    @Override
+    public Optional<String> presign(String key, Duration ttl, String contentType, String filename) throws IOException {
+        Map<String, String> responseHeaders = new HashMap<>();
+        responseHeaders.put("response-content-type", contentType);
+        responseHeaders.put("response-content-disposition", "attachment; filename=\"" + filename + "\"");
+
+        return Optional.of(call(key, () -> presignClient().getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+                .method(Method.GET)
+                .bucket(minIOProperties.getBucket())
+                .object(key)
+                .expiry((int) ttl.toSeconds(), TimeUnit.SECONDS)
+                .extraQueryParams(responseHeaders)
+                .build())));
+    }
+
+    // URLs are signed for the host clients will use, so a public endpoint needs its own client
+    private MinioClient presignClient() {
+        if (minIOProperties.getPublicEndpoint() == null || minIOProperties.getPublicEndpoint().isBlank()) {
+            return minioClient;
+        }
+        MinioClient client = presignClient;
+        if (client == null) {
+            client = MinioClient.builder()
+                    .endpoint(minIOProperties.getPublicEndpoint())
+                    .credentials(minIOProperties.getAccessKey(), minIOProperties.getSecretKey())
+                    .region(minIOProperties.getRegion())
+                    .build();
+            presignClient = client;
+        }
+        return client;
+    }
+
+    @FunctionalInterface
+    private interface MinioCall<T> {
+        T run() throws Exception;
+    }
+
+    private <T> T call(String key, MinioCall<T> call) throws IOException {
+        try {
+            return call.run();
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                throw new NoSuchFileException(key);
+            }
+            throw new IOException("MinIO request for " + key + " failed: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("MinIO request for " + key + " failed: " + e.getMessage(), e);
+        }
+    }
+}
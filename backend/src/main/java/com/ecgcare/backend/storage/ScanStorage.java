@@ -0,0 +1,96 @@
+package com.ecgcare.backend.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Object storage behind scan blobs, derivatives and upload parts. The backend is chosen with
+ * {@code storage.backend}: {@code minio} (default), {@code filesystem} or {@code memory}.
+ * A missing object is reported as {@link java.nio.file.NoSuchFileException}.
+ */
+public interface ScanStorage {
+
+    /**
+     * Stores exactly {@code size} bytes read from {@code content}, replacing any existing object.
+     */
+    void put(String key, InputStream content, long size, String contentType) throws IOException;
+
+    /**
+     * Opens {@code length} bytes from {@code offset}; a null {@code length} reads to the end.
+     */
+    InputStream get(String key, long offset, Long length) throws IOException;
+
+    default InputStream get(String key) throws IOException {
+        return get(key, 0, null);
+    }
+
+    Optional<StoredObject> stat(String key) throws IOException;
+
+    /**
+     * Removes the object; removing a missing object is not an error.
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Removes the objects and returns those that could not be removed, with the reason.
+     */
+    Map<String, String> deleteAll(Collection<String> keys);
+
+    /**
+     * Lazily lists every object under the prefix. The stream must be closed; listing failures
+     * surface as {@link UncheckedIOException}.
+     */
+    Stream<StoredObject> list(String prefix) throws IOException;
+
+    /**
+     * Writes the concatenation of the source objects to {@code key}. Backends that can assemble
+     * objects server-side override this; the default streams the sources through {@link #put}.
+     */
+    default void compose(String key, List<String> sources, long size, String contentType) throws IOException {
+        Iterator<String> remaining = sources.iterator();
+        // Sources are opened one at a time as the previous one is consumed
+        Enumeration<InputStream> opened = new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return remaining.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return get(remaining.next());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        try (InputStream in = new SequenceInputStream(opened)) {
+            put(key, in, size, contentType);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns a time-limited URL clients can download the object from directly, when the backend
+     * is reachable by clients.
+     */
+    default Optional<String> presign(String key, Duration ttl, String contentType, String filename)
+            throws IOException {
+        return Optional.empty();
+    }
+
+    record StoredObject(String key, long size, Instant lastModified) {
+    }
+}
@@ -0,0 +1,88 @@
+package com.ecgcare.backend.util;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Consecutive-failure circuit breaker. After {@code failureThreshold} failures in a row calls are
+ * rejected for {@code openDuration}; then a single probe call is let through (half-open) and its
+ * outcome decides whether the circuit closes again or stays open for another period.
+ *
+ * <p>Every call allowed by {@link #tryAcquire()} must be reported with {@link #onSuccess()},
+ * {@link #onFailure()} or, when it says nothing about the service's health, {@link #release()}.
+ */
+public class CircuitBreaker {
+    public enum State {
+        closed, open, half_open
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoTime;
+
+    private State state = State.closed;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier nanoTime) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case closed:
+                return true;
+            case open:
+                if (nanoTime.getAsLong() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.half_open;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.closed;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.half_open || consecutiveFailures >= failureThreshold) {
+            state = State.open;
+            openedAt = nanoTime.getAsLong();
+        }
+    }
+
+    /**
+     * Reports a call that failed for reasons of its own, before or without reaching the service.
+     * The state is unchanged; a half-open circuit lets the next probe through.
+     */
+    public synchronized void release() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        // Report an open circuit whose wait is over as half-open, as the next call will probe
+        if (state == State.open && nanoTime.getAsLong() - openedAt >= openNanos) {
+            return State.half_open;
+        }
+        return state;
+    }
+}
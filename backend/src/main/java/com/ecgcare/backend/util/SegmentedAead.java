@@ -0,0 +1,291 @@
+package com.ecgcare.backend.util;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Segmented streaming AES-GCM. The plaintext is split into fixed-size segments that are sealed
+ * independently, so a stream is encrypted and decrypted in constant memory and any byte range can
+ * be decrypted by reading only the segments that cover it.
+ *
+ * <p>Layout: a 16-byte header (magic, version, segment size, random nonce prefix) followed by
+ * segments of {@code segmentSize + 16} bytes, the last of which may be shorter. Each segment's
+ * nonce is the prefix, the segment index and a final-segment flag, and the header is authenticated
+ * with every segment, so segments cannot be reordered, dropped or truncated unnoticed.
+ */
+public final class SegmentedAead {
+    public static final int HEADER_LENGTH = 16;
+    public static final int TAG_LENGTH = 16;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final byte[] MAGIC = {'E', 'C', 'G', 'S'};
+    private static final byte VERSION = 1;
+    private static final int NONCE_PREFIX_LENGTH = 7;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private SegmentedAead() {
+    }
+
+    public record Header(int segmentSize, byte[] noncePrefix, byte[] bytes) {
+        /**
+         * Position of the segment within the ciphertext.
+         */
+        public long segmentOffset(long segment) {
+            return HEADER_LENGTH + segment * (segmentSize + (long) TAG_LENGTH);
+        }
+    }
+
+    public static long ciphertextSize(long plaintextSize, int segmentSize) {
+        return HEADER_LENGTH + plaintextSize + segmentCount(plaintextSize, segmentSize) * TAG_LENGTH;
+    }
+
+    /**
+     * An empty plaintext still has one (empty) final segment.
+     */
+    public static long segmentCount(long plaintextSize, int segmentSize) {
+        return Math.max(1, (plaintextSize + segmentSize - 1) / segmentSize);
+    }
+
+    public static Header readHeader(InputStream in) throws IOException {
+        byte[] bytes = in.readNBytes(HEADER_LENGTH);
+        if (bytes.length != HEADER_LENGTH || !Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length)
+                || bytes[MAGIC.length] != VERSION) {
+            throw new IOException("Not a segmented AEAD stream");
+        }
+        int segmentSize = ByteBuffer.wrap(bytes, MAGIC.length + 1, Integer.BYTES).getInt();
+        if (segmentSize <= 0) {
+            throw new IOException("Invalid segment size " + segmentSize);
+        }
+        return new Header(segmentSize, Arrays.copyOfRange(bytes, HEADER_LENGTH - NONCE_PREFIX_LENGTH, HEADER_LENGTH),
+                bytes);
+    }
+
+    /**
+     * Returns the ciphertext of the plaintext stream, header included, produced as it is read.
+     */
+    public static InputStream encrypt(InputStream plaintext, SecretKey key, int segmentSize) {
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        RANDOM.nextBytes(noncePrefix);
+        byte[] header = ByteBuffer.allocate(HEADER_LENGTH)
+                .put(MAGIC)
+                .put(VERSION)
+                .putInt(segmentSize)
+                .put(noncePrefix)
+                .array();
+        return new EncryptingStream(plaintext, key, new Header(segmentSize, noncePrefix, header));
+    }
+
+    /**
+     * Decrypts a stream positioned at segment {@code firstSegment}. When {@code lastSegment} is
+     * known (from the plaintext size) the stream may end at any segment boundary before it, as for
+     * ranged reads; pass -1 to read to the end and detect the final segment from the data.
+     */
+    public static InputStream decrypt(InputStream segments, SecretKey key, Header header, long firstSegment,
+            long lastSegment) {
+        return new DecryptingStream(segments, key, header, firstSegment, lastSegment);
+    }
+
+    private static GCMParameterSpec nonce(Header header, long segment, boolean last) throws IOException {
+        if (segment > 0xFFFFFFFFL) {
+            throw new IOException("Stream too long");
+        }
+        byte[] nonce = ByteBuffer.allocate(NONCE_PREFIX_LENGTH + Integer.BYTES + 1)
+                .put(header.noncePrefix())
+                .putInt((int) segment)
+                .put((byte) (last ? 1 : 0))
+                .array();
+        return new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Serves bytes from one segment-sized buffer at a time.
+     */
+    private abstract static class SegmentStream extends InputStream {
+        protected final InputStream in;
+        protected byte[] buffer;
+        protected int position;
+        protected int limit;
+        // A byte read ahead to find out whether the previous segment was the last one
+        protected int lookahead = -1;
+
+        SegmentStream(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Loads the next chunk into the buffer; false at the end of the stream.
+         */
+        protected abstract boolean refill() throws IOException;
+
+        protected int readSegment(byte[] target) throws IOException {
+            int n = 0;
+            if (lookahead >= 0) {
+                target[n++] = (byte) lookahead;
+                lookahead = -1;
+            }
+            return n + in.readNBytes(target, n, target.length - n);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] target, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position >= limit) {
+                if (!refill()) {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(buffer, position, target, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class EncryptingStream extends SegmentStream {
+        private final SecretKey key;
+        private final Header header;
+        private final Cipher cipher = newCipher();
+        private final byte[] plaintext;
+        private long segment;
+        private boolean headerWritten;
+        private boolean finished;
+
+        EncryptingStream(InputStream in, SecretKey key, Header header) {
+            super(in);
+            this.key = key;
+            this.header = header;
+            this.plaintext = new byte[header.segmentSize()];
+        }
+
+        @Override
+        protected boolean refill() throws IOException {
+            if (!headerWritten) {
+                headerWritten = true;
+                buffer = header.bytes();
+                position = 0;
+                limit = buffer.length;
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+
+            int n = readSegment(plaintext);
+            boolean last = n < plaintext.length;
+            if (!last) {
+                lookahead = in.read();
+                last = lookahead < 0;
+            }
+
+            if (buffer == null || buffer.length != plaintext.length + TAG_LENGTH) {
+                buffer = new byte[plaintext.length + TAG_LENGTH];
+            }
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, nonce(header, segment, last));
+                cipher.updateAAD(header.bytes());
+                limit = cipher.doFinal(plaintext, 0, n, buffer, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to encrypt segment " + segment, e);
+            }
+            position = 0;
+            segment++;
+            finished = last;
+            return true;
+        }
+    }
+
+    private static class DecryptingStream extends SegmentStream {
+        private final SecretKey key;
+        private final Header header;
+        private final long lastSegment;
+        private final Cipher cipher = newCipher();
+        private final byte[] ciphertext;
+        private long segment;
+        private boolean finished;
+
+        DecryptingStream(InputStream in, SecretKey key, Header header, long firstSegment, long lastSegment) {
+            super(in);
+            this.key = key;
+            this.header = header;
+            this.segment = firstSegment;
+            this.lastSegment = lastSegment;
+            this.ciphertext = new byte[header.segmentSize() + TAG_LENGTH];
+            this.buffer = new byte[header.segmentSize()];
+        }
+
+        @Override
+        protected boolean refill() throws IOException {
+            if (finished || (lastSegment >= 0 && segment > lastSegment)) {
+                return false;
+            }
+
+            int n = readSegment(ciphertext);
+            boolean last;
+            if (lastSegment >= 0) {
+                if (n == 0) {
+                    // The requested range ended on a segment boundary
+                    finished = true;
+                    return false;
+                }
+                last = segment == lastSegment;
+            } else {
+                last = n < ciphertext.length;
+                if (!last) {
+                    lookahead = in.read();
+                    last = lookahead < 0;
+                }
+            }
+            if (n < TAG_LENGTH) {
+                throw new IOException("Truncated segment " + segment);
+            }
+
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, nonce(header, segment, last));
+                cipher.updateAAD(header.bytes());
+                limit = cipher.doFinal(ciphertext, 0, n, buffer, 0);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Segment " + segment + " failed authentication", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to decrypt segment " + segment, e);
+            }
+            position = 0;
+            segment++;
+            finished = last;
+            return true;
+        }
+    }
+}
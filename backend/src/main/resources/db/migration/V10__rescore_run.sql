@@ -0,0 +1,19 @@
+-- Runs that predict every stored scan with a new model version, resumable from the last scan id
+create table rescore_run (
+  run_id varchar(36) primary key,
+  model_version varchar(50) not null,
+  threshold decimal(5,4) not null,
+  status varchar(20) not null,
+  started_by varchar(36) not null references doctor(doctor_id) on delete cascade,
+  last_scan_id varchar(36),
+  total_scans bigint not null default 0,
+  scanned bigint not null default 0,
+  skipped bigint not null default 0,
+  created_at timestamp not null default current_timestamp,
+  updated_at timestamp not null default current_timestamp,
+  completed_at timestamp
+);
+create index idx_rescore_run_status on rescore_run(status);
+
+alter table prediction_job add column rescore_run_id varchar(36) references rescore_run(run_id) on delete set null;
+create index idx_prediction_job_rescore on prediction_job(rescore_run_id, status);
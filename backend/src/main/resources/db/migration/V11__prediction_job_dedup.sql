@@ -0,0 +1,4 @@
+-- One job in flight per (scan, model version, threshold): the key is set while a job is queued or
+-- running and cleared when it finishes, and NULLs do not collide
+alter table prediction_job add column dedup_key varchar(200);
+create unique index uq_prediction_job_dedup on prediction_job(dedup_key);
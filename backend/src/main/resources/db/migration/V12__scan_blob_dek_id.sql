@@ -0,0 +1,3 @@
+-- Identifies the DEK an encrypted object was written with. Content released and uploaded again is
+-- re-encrypted under a new DEK, so cached copies and derivatives are keyed by it as well
+alter table scan_blob add column dek_id varchar(36);
@@ -0,0 +1,3 @@
+-- Each PUT of a part is stored under its own object, so a part re-sent while the session completes
+-- cannot change the bytes being assembled; null for parts stored before this migration
+alter table upload_part add column object_key varchar(500);
@@ -0,0 +1,5 @@
+-- Parts of sessions started with encryption enabled are sealed with a DEK of their own, wrapped with
+-- the master key; null for sessions whose parts are stored in plaintext
+alter table upload_session add column dek_enc varbinary(512);
+alter table upload_session add column dek_iv varbinary(16);
+alter table upload_session add column dek_tag varbinary(16);
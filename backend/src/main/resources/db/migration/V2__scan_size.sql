@@ -0,0 +1,2 @@
+-- Object size recorded at upload, alongside the real SHA-256 checksum
+alter table ecg_scan add column size_bytes bigint;
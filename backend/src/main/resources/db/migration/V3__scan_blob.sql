@@ -0,0 +1,10 @@
+-- Content-addressed scan objects, shared by every ecg_scan row with the same checksum
+create table scan_blob (
+  checksum varchar(100) primary key,
+  object_key varchar(500) not null unique,
+  size_bytes bigint not null,
+  mimetype varchar(100) not null,
+  ref_count int not null,
+  created_at timestamp not null default current_timestamp
+);
+create index idx_scan_checksum on ecg_scan(checksum);
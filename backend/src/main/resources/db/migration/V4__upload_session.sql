@@ -0,0 +1,26 @@
+-- Resumable chunked uploads: one session per file, one row per received part
+create table upload_session (
+  upload_id varchar(36) primary key,
+  patient_id varchar(36) not null references patient(patient_id) on delete cascade,
+  doctor_id varchar(36) not null references doctor(doctor_id) on delete cascade,
+  filename varchar(255),
+  mimetype varchar(100) not null,
+  total_size bigint not null,
+  chunk_size bigint not null,
+  total_parts int not null,
+  status varchar(20) not null,
+  scan_id varchar(36) references ecg_scan(scan_id) on delete set null,
+  metadata varchar(2000),
+  created_at timestamp not null default current_timestamp,
+  expires_at timestamp not null
+);
+create index idx_upload_session_status_expiry on upload_session(status, expires_at);
+
+create table upload_part (
+  upload_id varchar(36) not null references upload_session(upload_id) on delete cascade,
+  part_number int not null,
+  size_bytes bigint not null,
+  checksum varchar(100) not null,
+  uploaded_at timestamp not null default current_timestamp,
+  primary key (upload_id, part_number)
+);
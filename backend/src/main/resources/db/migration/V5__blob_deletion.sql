@@ -0,0 +1,11 @@
+-- Outbox of object-store deletions, written with the row changes that orphan the object
+create table blob_deletion (
+  deletion_id bigint generated always as identity primary key,
+  object_key varchar(500) not null,
+  attempts int not null default 0,
+  last_error varchar(1000),
+  next_attempt_at timestamp not null default current_timestamp,
+  created_at timestamp not null default current_timestamp
+);
+create index idx_blob_deletion_due on blob_deletion(next_attempt_at);
+create index idx_blob_deletion_key on blob_deletion(object_key);
@@ -0,0 +1,5 @@
+-- Per-blob data keys for objects encrypted at rest; null for plaintext objects
+alter table scan_blob add column wrapping_scheme varchar(50);
+alter table scan_blob add column dek_enc varbinary(512);
+alter table scan_blob add column dek_iv varbinary(16);
+alter table scan_blob add column dek_tag varbinary(16);
@@ -0,0 +1,18 @@
+-- Queued prediction requests, drained by a bounded worker pool outside the request thread
+create table prediction_job (
+  job_id varchar(36) primary key,
+  scan_id varchar(36) not null references ecg_scan(scan_id) on delete cascade,
+  patient_id varchar(36) not null references patient(patient_id) on delete cascade,
+  requested_by varchar(36) not null references doctor(doctor_id) on delete cascade,
+  model_version varchar(50) not null,
+  threshold decimal(5,4) not null,
+  status varchar(20) not null,
+  attempts int not null default 0,
+  last_error varchar(1000),
+  result_id varchar(36) references ml_result(result_id) on delete set null,
+  next_attempt_at timestamp not null default current_timestamp,
+  locked_until timestamp,
+  created_at timestamp not null default current_timestamp,
+  updated_at timestamp not null default current_timestamp
+);
+create index idx_prediction_job_due on prediction_job(status, next_attempt_at);
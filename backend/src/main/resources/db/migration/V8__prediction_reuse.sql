@@ -0,0 +1,7 @@
+-- Predictions depend only on the image content and the model, so results are looked up by checksum
+alter table ml_result add column checksum varchar(100);
+update ml_result set checksum = (select s.checksum from ecg_scan s where s.scan_id = ml_result.scan_id);
+create index idx_ml_checksum_model on ml_result(checksum, model_version, created_at);
+create index idx_ml_scan_model on ml_result(scan_id, model_version);
+
+alter table prediction_job add column force boolean not null default false;
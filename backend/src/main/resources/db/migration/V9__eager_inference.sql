@@ -0,0 +1,6 @@
+-- Doctors can have a prediction started as soon as a scan is uploaded
+alter table doctor add column eager_inference boolean not null default false;
+
+-- Jobs started on upload run in a limited share of the workers, behind requested ones
+alter table prediction_job add column background boolean not null default false;
+create index idx_prediction_job_scan on prediction_job(scan_id, status);
@@ -0,0 +1,165 @@
+package com.ecgcare.backend.ml;
+
+import com.ecgcare.backend.config.MlProperties;
+import com.ecgcare.backend.exception.MlServiceException;
+import com.ecgcare.backend.util.CircuitBreaker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MlClientTest {
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger status = new AtomicInteger(200);
+    private final AtomicInteger delayMillis = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicReference<byte[]> lastBody = new AtomicReference<>();
+    private final AtomicReference<String> lastScanId = new AtomicReference<>();
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/predict", exchange -> {
+            calls.incrementAndGet();
+            lastBody.set(exchange.getRequestBody().readAllBytes());
+            lastScanId.set(exchange.getRequestHeaders().getFirst(MlClient.SCAN_ID_HEADER));
+            try {
+                Thread.sleep(delayMillis.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] response = "{\"prediction\":\"ASD\",\"confidence_score\":0.9}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status.get(), response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+
+    @Test
+    void streamsImageAndParsesResponse() {
+        MlClient client = newClient(properties());
+        byte[] image = {1, 2, 3, 4, 5};
+        UUID scanId = UUID.randomUUID();
+
+        Map<String, Object> response = client.postImage("/predict",
+                new ScanImage(scanId, (long) image.length, "image/png", () -> new ByteArrayInputStream(image)));
+
+        assertEquals("ASD", response.get("prediction"));
+        assertArrayEquals(image, lastBody.get());
+        assertEquals(scanId.toString(), lastScanId.get());
+    }
+
+    @Test
+    void abortsCallsPastTheDeadline() {
+        MlProperties properties = properties();
+        properties.getClient().setDeadline(Duration.ofMillis(200));
+        MlClient client = newClient(properties);
+        delayMillis.set(2000);
+
+        long start = System.nanoTime();
+        MlServiceException e = assertThrows(MlServiceException.class,
+                () -> client.postJson("/predict", Map.of()));
+        assertTrue(e.getMessage().contains("deadline"), e.getMessage());
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1500);
+    }
+
+    @Test
+    void opensCircuitAfterFailuresAndProbesAfterPause() throws Exception {
+        MlProperties properties = properties();
+        properties.getClient().setFailureThreshold(2);
+        properties.getClient().setOpenDuration(Duration.ofMillis(200));
+        MlClient client = newClient(properties);
+        status.set(503);
+
+        assertThrows(MlServiceException.class, () -> client.postJson("/predict", Map.of()));
+        assertThrows(MlServiceException.class, () -> client.postJson("/predict", Map.of()));
+        assertEquals(CircuitBreaker.State.open, client.getCircuitState());
+
+        // Rejected without reaching the service
+        assertThrows(MlServiceException.class, () -> client.postJson("/predict", Map.of()));
+        assertEquals(2, calls.get());
+
+        Thread.sleep(250);
+        status.set(200);
+        assertEquals("ASD", client.postJson("/predict", Map.of()).get("prediction"));
+        assertEquals(CircuitBreaker.State.closed, client.getCircuitState());
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void probesThatFailBeforeSendingLetTheNextProbeThrough() throws Exception {
+        MlProperties properties = properties();
+        properties.getClient().setFailureThreshold(1);
+        properties.getClient().setOpenDuration(Duration.ofMillis(200));
+        MlClient client = newClient(properties);
+        status.set(503);
+        assertThrows(MlServiceException.class, () -> client.postJson("/predict", Map.of()));
+        Thread.sleep(250);
+
+        // The probe fails building the request, before anything reaches the service
+        assertThrows(IllegalArgumentException.class, () -> client.postJson("/not a path", Map.of()));
+        assertEquals(CircuitBreaker.State.half_open, client.getCircuitState());
+
+        status.set(200);
+        assertEquals("ASD", client.postJson("/predict", Map.of()).get("prediction"));
+        assertEquals(CircuitBreaker.State.closed, client.getCircuitState());
+    }
+
+    @Test
+    void unreadableScansDoNotOpenTheCircuit() {
+        MlProperties properties = properties();
+        properties.getClient().setFailureThreshold(2);
+        MlClient client = newClient(properties);
+        ScanImage missing = new ScanImage(UUID.randomUUID(), 5L, "image/png", () -> {
+            throw new NoSuchFileException("blobs/sha256/ab/missing");
+        });
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(UncheckedIOException.class, () -> client.postImage("/predict", missing));
+        }
+        assertEquals(CircuitBreaker.State.closed, client.getCircuitState());
+    }
+
+    private MlProperties properties() {
+        MlProperties properties = new MlProperties();
+        properties.setReplicas(List.of(baseUrl));
+        return properties;
+    }
+
+    private MlClient newClient(MlProperties properties) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new MlClient(properties, new MlReplicaPool(properties, registry), new ObjectMapper(), registry);
+    }
+}
@@ -0,0 +1,72 @@
+package com.ecgcare.backend.ml;
+
+import com.ecgcare.backend.config.MlProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MlReplicaPoolTest {
+
+    @Test
+    void prefersTheLessLoadedReplica() {
+        MlReplicaPool pool = newPool(List.of("http://a", "http://b"));
+        MlReplicaPool.Replica busy = pool.getReplicas().get(0);
+        busy.start();
+
+        for (int i = 0; i < 20; i++) {
+            assertNotSame(busy, pool.choose());
+        }
+    }
+
+    @Test
+    void ejectsReplicaAfterConsecutiveFailures() {
+        MlReplicaPool pool = newPool(List.of("http://a", "http://b", "http://c", "http://d"));
+        MlReplicaPool.Replica failing = pool.getReplicas().get(0);
+        for (int i = 0; i < 3; i++) {
+            failing.start();
+            failing.finish(1_000_000, false);
+        }
+
+        assertEquals(Set.copyOf(pool.getReplicas().subList(1, 4)), chooseMany(pool));
+    }
+
+    @Test
+    void ejectsSlowOutliers() {
+        MlReplicaPool pool = newPool(List.of("http://a", "http://b", "http://c"));
+        List<MlReplicaPool.Replica> replicas = pool.getReplicas();
+        long[] latencies = {20_000_000_000L, 100_000_000L, 120_000_000L};
+        for (int i = 0; i < replicas.size(); i++) {
+            replicas.get(i).start();
+            replicas.get(i).finish(latencies[i], true);
+        }
+
+        pool.ejectSlowOutliers();
+
+        long now = System.nanoTime();
+        assertFalse(replicas.get(0).isAvailable(now));
+        assertTrue(replicas.get(1).isAvailable(now));
+        assertTrue(replicas.get(2).isAvailable(now));
+    }
+
+    private Set<MlReplicaPool.Replica> chooseMany(MlReplicaPool pool) {
+        Set<MlReplicaPool.Replica> chosen = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            chosen.add(pool.choose());
+        }
+        return chosen;
+    }
+
+    private MlReplicaPool newPool(List<String> replicas) {
+        MlProperties properties = new MlProperties();
+        properties.setReplicas(replicas);
+        return new MlReplicaPool(properties, new SimpleMeterRegistry());
+    }
+}
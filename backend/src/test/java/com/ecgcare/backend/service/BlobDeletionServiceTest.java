@@ -0,0 +1,110 @@
+package com.ecgcare.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.ByteArrayInputStream;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class BlobDeletionServiceTest extends ServiceTestBase {
+    @Autowired
+    BlobDeletionService blobDeletionService;
+    @Autowired
+    ScanBlobService scanBlobService;
+
+    @Test
+    void drainRemovesQueuedObjects() throws Exception {
+        String objectKey = putObject("orphans/" + UUID.randomUUID());
+        String derivative = putObject(scanBlobService.derivativeKey(objectKey, "thumbnail"));
+        scanBlobService.scheduleDeletion(objectKey);
+
+        blobDeletionService.drain();
+        assertFalse(exists(objectKey));
+        assertEquals(0, pendingDeletions(objectKey));
+        // Derivatives only go with content-addressed blobs
+        assertTrue(exists(derivative));
+    }
+
+    @Test
+    void failedDeletionsAreRetriedWithBackoff() throws Exception {
+        // Only this test's deletion is due when the outbox is drained below
+        blobDeletionService.drain();
+        String objectKey = putObject("orphans/" + UUID.randomUUID());
+        scanBlobService.scheduleDeletion(objectKey);
+        doReturn(Map.of(objectKey, "storage unavailable")).when(scanStorage).deleteAll(List.of(objectKey));
+
+        blobDeletionService.drain();
+        assertTrue(exists(objectKey));
+        Map<String, Object> deletion = jdbcTemplate.queryForMap(
+                "select attempts, last_error, next_attempt_at from blob_deletion where object_key = ?", objectKey);
+        assertEquals(1, deletion.get("attempts"));
+        assertEquals("storage unavailable", deletion.get("last_error"));
+        Duration retryIn = Duration.between(Instant.now(), ((Timestamp) deletion.get("next_attempt_at")).toInstant());
+        assertTrue(retryIn.compareTo(Duration.ofSeconds(50)) > 0 && retryIn.compareTo(Duration.ofMinutes(1)) <= 0,
+                "retry in " + retryIn);
+
+        // Not due yet
+        blobDeletionService.drain();
+        verify(scanStorage).deleteAll(List.of(objectKey));
+
+        jdbcTemplate.update("update blob_deletion set next_attempt_at = ? where object_key = ?",
+                Timestamp.from(Instant.now().minusSeconds(1)), objectKey);
+        doCallRealMethod().when(scanStorage).deleteAll(List.of(objectKey));
+        blobDeletionService.drain();
+        assertFalse(exists(objectKey));
+        assertEquals(0, pendingDeletions(objectKey));
+    }
+
+    @Test
+    void reconcileQueuesOnlyUnreferencedObjects() throws Exception {
+        UUID doctorId = createDoctor();
+        UUID scanId = createScan(createPatient(doctorId), doctorId);
+        String referenced = putObject("scans/" + scanId);
+        String derivative = putObject(scanBlobService.derivativeKey(referenced, "thumbnail"));
+        String part = putObject("uploads/" + UUID.randomUUID() + "/00001");
+        String orphan = putObject("orphans/" + UUID.randomUUID());
+        String orphanDerivative = putObject(scanBlobService.derivativeKey(orphan, "thumbnail"));
+
+        blobDeletionService.reconcile();
+        assertEquals(0, pendingDeletions(referenced));
+        assertEquals(0, pendingDeletions(derivative));
+        assertEquals(0, pendingDeletions(part));
+        assertEquals(1, pendingDeletions(orphan));
+        assertEquals(1, pendingDeletions(orphanDerivative));
+
+        // Objects already queued are not queued twice
+        blobDeletionService.reconcile();
+        assertEquals(1, pendingDeletions(orphan));
+        verify(scanStorage, never()).deleteAll(argThat(keys -> keys.contains(referenced)));
+    }
+
+    String putObject(String objectKey) throws Exception {
+        byte[] content = {1, 2, 3};
+        scanBlobService.putObject(objectKey, new ByteArrayInputStream(content), content.length,
+                "application/octet-stream");
+        return objectKey;
+    }
+
+    boolean exists(String objectKey) throws Exception {
+        return scanStorage.stat(objectKey).isPresent();
+    }
+
+    int pendingDeletions(String objectKey) {
+        return jdbcTemplate.queryForObject("select count(*) from blob_deletion where object_key = ?",
+                Integer.class, objectKey);
+    }
+}
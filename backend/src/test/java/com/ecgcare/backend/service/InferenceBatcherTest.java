@@ -0,0 +1,155 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.MlProperties;
+import com.ecgcare.backend.ml.MlClient;
+import com.ecgcare.backend.ml.Prediction;
+import com.ecgcare.backend.ml.ScanImage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InferenceBatcherTest {
+    private final MlClient mlClient = mock(MlClient.class);
+    private final List<List<UUID>> calls = new ArrayList<>();
+    private InferenceBatcher batcher;
+
+    @AfterEach
+    void shutdown() {
+        batcher.shutdown();
+    }
+
+    @Test
+    void unreadableImagesFailOnlyTheirOwnRequest() throws Exception {
+        batcher = newBatcher(MlProperties.Transport.binary);
+        answerByReadingImages();
+
+        CompletableFuture<Prediction> first = batcher.submit(image(readable()));
+        CompletableFuture<Prediction> missing = batcher.submit(image(() -> {
+            throw new NoSuchFileException("scans/missing");
+        }));
+        CompletableFuture<Prediction> last = batcher.submit(image(readable()));
+
+        assertEquals("ASD", first.get(5, TimeUnit.SECONDS).predictedLabel());
+        assertEquals("ASD", last.get(5, TimeUnit.SECONDS).predictedLabel());
+        assertFailedWith(NoSuchFileException.class, missing);
+        assertEquals(1, calls.size());
+        assertEquals(2, calls.get(0).size());
+    }
+
+    @Test
+    void imagesFailingWhileSentAreDroppedAndTheRestSentAgain() throws Exception {
+        batcher = newBatcher(MlProperties.Transport.binary);
+        answerByReadingImages();
+
+        CompletableFuture<Prediction> first = batcher.submit(image(readable()));
+        ScanImage broken = image(() -> new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection to storage reset");
+            }
+        });
+        CompletableFuture<Prediction> failing = batcher.submit(broken);
+        CompletableFuture<Prediction> last = batcher.submit(image(readable()));
+
+        assertEquals("ASD", first.get(5, TimeUnit.SECONDS).predictedLabel());
+        assertEquals("ASD", last.get(5, TimeUnit.SECONDS).predictedLabel());
+        assertFailedWith(UncheckedIOException.class, failing);
+        assertEquals(2, calls.size());
+        assertEquals(2, calls.get(1).size());
+        assertFalse(calls.get(1).contains(broken.scanId()));
+    }
+
+    @Test
+    void jsonTransportLeavesUnreadableImagesOutOfTheBatch() throws Exception {
+        batcher = newBatcher(MlProperties.Transport.json);
+        when(mlClient.postJson(anyString(), any())).thenAnswer(invocation -> {
+            Map<?, ?> body = invocation.getArgument(1);
+            return results(((List<?>) body.get("items")).size());
+        });
+
+        CompletableFuture<Prediction> readable = batcher.submit(image(readable()));
+        CompletableFuture<Prediction> missing = batcher.submit(image(() -> {
+            throw new NoSuchFileException("scans/missing");
+        }));
+
+        assertEquals("ASD", readable.get(5, TimeUnit.SECONDS).predictedLabel());
+        assertFailedWith(NoSuchFileException.class, missing);
+        verify(mlClient, times(1)).postJson(anyString(), any());
+    }
+
+    private InferenceBatcher newBatcher(MlProperties.Transport transport) {
+        MlProperties properties = new MlProperties();
+        properties.setTransport(transport);
+        // Long enough that every request of a test lands in one batch
+        properties.getBatch().setMaxDelay(Duration.ofMillis(300));
+        InferenceBatcher batcher = new InferenceBatcher(mlClient, properties, new SimpleMeterRegistry());
+        batcher.init();
+        return batcher;
+    }
+
+    /**
+     * Answers batch calls the way MlClient does: every image is read into the body, and a failure
+     * to read one ends the call.
+     */
+    private void answerByReadingImages() {
+        when(mlClient.postImages(anyString(), anyList())).thenAnswer(invocation -> {
+            List<ScanImage> images = invocation.getArgument(1);
+            calls.add(images.stream().map(ScanImage::scanId).toList());
+            for (ScanImage image : images) {
+                try (InputStream in = image.open()) {
+                    in.readAllBytes();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return results(images.size());
+        });
+    }
+
+    private static Map<String, Object> results(int count) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(Map.of("prediction", "ASD", "confidence_score", 0.9));
+        }
+        return Map.of("results", results);
+    }
+
+    private static ScanBlobService.BlobSource readable() {
+        return () -> new ByteArrayInputStream(new byte[] {1, 2, 3});
+    }
+
+    private static ScanImage image(ScanBlobService.BlobSource source) {
+        return new ScanImage(UUID.randomUUID(), null, "image/png", source);
+    }
+
+    private static void assertFailedWith(Class<? extends Throwable> type, CompletableFuture<Prediction> result) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(type, e.getCause());
+    }
+}
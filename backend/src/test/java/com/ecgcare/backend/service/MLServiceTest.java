@@ -0,0 +1,110 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.entity.EcgScan;
+import com.ecgcare.backend.ml.Prediction;
+import com.ecgcare.backend.repository.EcgScanRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class MLServiceTest extends ServiceTestBase {
+    @Autowired
+    EcgScanRepository scanRepository;
+
+    EcgScan scan;
+    CountDownLatch started;
+    CountDownLatch release;
+
+    @BeforeEach
+    void setUp() {
+        UUID doctorId = createDoctor();
+        scan = scanRepository.findById(createScan(createPatient(doctorId), doctorId)).orElseThrow();
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @Test
+    void concurrentInferenceForTheSameScanRunsTheModelOnce() throws Exception {
+        Prediction prediction = Prediction.of("ASD", 0.9);
+        blockModel(() -> prediction);
+
+        CompletableFuture<Prediction> first = CompletableFuture.supplyAsync(() -> mlService.infer(scan, "v1.0"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        AtomicReference<Prediction> joined = new AtomicReference<>();
+        Thread joiner = joiner(joined, new AtomicReference<>());
+
+        release.countDown();
+        joiner.join(10_000);
+        assertSame(prediction, first.get(10, TimeUnit.SECONDS));
+        assertSame(prediction, joined.get());
+        verify(httpInferenceEngine, times(1)).predict(any());
+    }
+
+    @Test
+    void joinersShareTheFailureOfTheCallTheyJoined() throws Exception {
+        blockModel(() -> {
+            throw new RuntimeException("ML service unavailable");
+        });
+
+        CompletableFuture<Prediction> first = CompletableFuture.supplyAsync(() -> mlService.infer(scan, "v1.0"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        AtomicReference<Prediction> joined = new AtomicReference<>();
+        AtomicReference<RuntimeException> joinError = new AtomicReference<>();
+        Thread joiner = joiner(joined, joinError);
+
+        release.countDown();
+        joiner.join(10_000);
+        assertEquals("Failed to get prediction: ML service unavailable", joinError.get().getMessage());
+        assertThrows(Exception.class, () -> first.get(10, TimeUnit.SECONDS));
+        verify(httpInferenceEngine, times(1)).predict(any());
+
+        // The failed call is not remembered; the next one runs the model again
+        release = new CountDownLatch(0);
+        blockModel(() -> Prediction.of("VSD", 0.8));
+        assertEquals("VSD", mlService.infer(scan, "v1.0").predictedLabel());
+    }
+
+    /**
+     * Makes the model wait for {@link #release} before answering.
+     */
+    void blockModel(Supplier<Prediction> answer) throws Exception {
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return answer.get();
+        }).when(httpInferenceEngine).predict(any());
+    }
+
+    /**
+     * Starts a second call for the scan and waits until it is parked on the first one.
+     */
+    Thread joiner(AtomicReference<Prediction> result, AtomicReference<RuntimeException> error)
+            throws InterruptedException {
+        Thread joiner = new Thread(() -> {
+            try {
+                result.set(mlService.infer(scan, "v1.0"));
+            } catch (RuntimeException e) {
+                error.set(e);
+            }
+        });
+        joiner.start();
+        await("the second call to join the first", () -> joiner.getState() == Thread.State.WAITING);
+        return joiner;
+    }
+}
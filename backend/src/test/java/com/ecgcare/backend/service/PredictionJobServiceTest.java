@@ -0,0 +1,222 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.dto.response.PredictionJobResponse;
+import com.ecgcare.backend.entity.PredictionJob;
+import com.ecgcare.backend.entity.PredictionJob.JobStatus;
+import com.ecgcare.backend.ml.Prediction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class PredictionJobServiceTest extends ServiceTestBase {
+    @Autowired
+    PredictionJobService predictionJobService;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    UUID doctorId;
+    UUID scanId;
+
+    @BeforeEach
+    void setUp() {
+        doctorId = createDoctor();
+        scanId = createScan(createPatient(doctorId), doctorId);
+    }
+
+    @Test
+    void failedJobsAreRetriedWithBackoffUntilTheLastAttempt() throws Exception {
+        doThrow(new RuntimeException("ML service unavailable"))
+                .when(mlService).infer(eq(scanId), any(UUID.class), anyString());
+
+        UUID jobId = enqueue(false).getJobId();
+        await("the first attempt to fail", () -> isRetrying(jobId, 1));
+        assertRetryIn(jobId, Duration.ofSeconds(30));
+
+        makeDue(jobId);
+        predictionJobService.dispatch();
+        await("the second attempt to fail", () -> isRetrying(jobId, 2));
+        assertRetryIn(jobId, Duration.ofSeconds(60));
+
+        makeDue(jobId);
+        predictionJobService.dispatch();
+        await("the job to fail", () -> job(jobId).getStatus() == JobStatus.failed);
+        PredictionJob job = job(jobId);
+        assertEquals(3, job.getAttempts());
+        assertEquals("ML service unavailable", job.getLastError());
+        assertNull(job.getDedupKey());
+        verify(mlService, times(3)).infer(eq(scanId), any(UUID.class), anyString());
+    }
+
+    @Test
+    void runningJobsAreReclaimedOnlyOnceTheirLeaseExpires() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                firstStarted.countDown();
+                releaseFirst.await(10, TimeUnit.SECONDS);
+                throw new RuntimeException("ML service timed out");
+            }
+            return Prediction.of("VSD", 0.8);
+        }).when(mlService).infer(eq(scanId), any(UUID.class), anyString());
+
+        UUID jobId = enqueue(false).getJobId();
+        assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+
+        predictionJobService.dispatch();
+        assertEquals(1, job(jobId).getAttempts());
+
+        expireLease(jobId);
+        predictionJobService.dispatch();
+        await("the reclaimed job to succeed", () -> job(jobId).getStatus() == JobStatus.succeeded);
+
+        // The worker that lost the lease fails late, and leaves the job as the new worker left it
+        releaseFirst.countDown();
+        awaitCompletions(jobId, 2);
+        PredictionJob job = job(jobId);
+        assertEquals(JobStatus.succeeded, job.getStatus());
+        assertEquals(2, job.getAttempts());
+        assertNull(job.getLastError());
+    }
+
+    @Test
+    void aReclaimedJobThatCompletesTwiceKeepsOneResult() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                firstStarted.countDown();
+                releaseFirst.await(10, TimeUnit.SECONDS);
+                return Prediction.of("ASD", 0.9);
+            }
+            return Prediction.of("VSD", 0.8);
+        }).when(mlService).infer(eq(scanId), any(UUID.class), anyString());
+
+        UUID jobId = enqueue(false).getJobId();
+        assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+        expireLease(jobId);
+        predictionJobService.dispatch();
+        await("the reclaimed job to succeed", () -> job(jobId).getStatus() == JobStatus.succeeded);
+        UUID resultId = job(jobId).getResultId();
+
+        releaseFirst.countDown();
+        awaitCompletions(jobId, 2);
+        PredictionJob job = job(jobId);
+        assertEquals(2, job.getAttempts());
+        assertEquals(resultId, job.getResultId());
+        assertEquals(List.of("VSD"), jdbcTemplate.queryForList(
+                "select predicted_label from ml_result where scan_id = ?", String.class, scanId.toString()));
+    }
+
+    @Test
+    void requestsForTheSamePredictionJoinTheJobInFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return Prediction.of("ASD", 0.9);
+        }).when(mlService).infer(eq(scanId), any(UUID.class), anyString());
+
+        UUID jobId = enqueue(false).getJobId();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(jobId, enqueue(false).getJobId());
+        // A forced request joins too, and marks the job so it cannot reuse an earlier prediction
+        assertEquals(jobId, enqueue(true).getJobId());
+        assertTrue(job(jobId).getForce());
+
+        release.countDown();
+        await("the job to succeed", () -> job(jobId).getStatus() == JobStatus.succeeded);
+        verify(mlService, times(1)).infer(eq(scanId), any(UUID.class), anyString());
+        assertEquals(1, countResults());
+    }
+
+    @Test
+    void requestsAfterTheJobFinishedReuseItsResultUnlessForced() throws Exception {
+        doReturn(Prediction.of("ASD", 0.9)).when(mlService).infer(eq(scanId), any(UUID.class), anyString());
+
+        UUID jobId = enqueue(false).getJobId();
+        await("the job to succeed", () -> job(jobId).getStatus() == JobStatus.succeeded);
+
+        PredictionJobResponse reused = enqueue(false);
+        assertNotEquals(jobId, reused.getJobId());
+        assertEquals(JobStatus.succeeded, reused.getStatus());
+        assertEquals(job(jobId).getResultId(), reused.getResultId());
+        verify(mlService, times(1)).infer(eq(scanId), any(UUID.class), anyString());
+
+        UUID forcedId = enqueue(true).getJobId();
+        await("the forced job to succeed", () -> job(forcedId).getStatus() == JobStatus.succeeded);
+        verify(mlService, times(2)).infer(eq(scanId), any(UUID.class), anyString());
+        assertEquals(2, countResults());
+    }
+
+    PredictionJobResponse enqueue(boolean force) {
+        return predictionJobService.enqueue(scanId, doctorId, null, null, force);
+    }
+
+    PredictionJob job(UUID jobId) {
+        return predictionJobRepository.findById(jobId).orElseThrow();
+    }
+
+    int countResults() {
+        return jdbcTemplate.queryForObject("select count(*) from ml_result where scan_id = ?", Integer.class,
+                scanId.toString());
+    }
+
+    boolean isRetrying(UUID jobId, int attempts) {
+        PredictionJob job = job(jobId);
+        return job.getStatus() == JobStatus.queued && job.getAttempts() == attempts;
+    }
+
+    void assertRetryIn(UUID jobId, Duration delay) {
+        Duration remaining = Duration.between(OffsetDateTime.now(), job(jobId).getNextAttemptAt());
+        assertTrue(remaining.compareTo(delay) <= 0 && remaining.compareTo(delay.minusSeconds(10)) > 0,
+                "retry in " + remaining);
+    }
+
+    void makeDue(UUID jobId) {
+        jdbcTemplate.update("update prediction_job set next_attempt_at = ? where job_id = ?",
+                Timestamp.from(Instant.now().minusSeconds(1)), jobId.toString());
+    }
+
+    void expireLease(UUID jobId) {
+        jdbcTemplate.update("update prediction_job set locked_until = ? where job_id = ?",
+                Timestamp.from(Instant.now().minusSeconds(1)), jobId.toString());
+    }
+
+    /**
+     * Waits until {@code workers} workers have recorded their outcome for the job, and for the last
+     * of them to commit.
+     */
+    void awaitCompletions(UUID jobId, int workers) {
+        verify(predictionJobRepository, timeout(10_000).times(workers)).findByIdForUpdate(jobId);
+        transactionTemplate.executeWithoutResult(status -> predictionJobRepository.findByIdForUpdate(jobId));
+    }
+}
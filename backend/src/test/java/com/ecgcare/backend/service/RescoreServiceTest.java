@@ -0,0 +1,117 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.config.MlProperties;
+import com.ecgcare.backend.entity.EcgScan;
+import com.ecgcare.backend.entity.PredictionJob;
+import com.ecgcare.backend.entity.PredictionJob.JobStatus;
+import com.ecgcare.backend.entity.RescoreRun;
+import com.ecgcare.backend.entity.RescoreRun.RunStatus;
+import com.ecgcare.backend.ml.Prediction;
+import com.ecgcare.backend.repository.EcgScanRepository;
+import com.ecgcare.backend.repository.RescoreRunRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * Queues re-scoring jobs the way a run's page does. The runs are created finished, so the
+ * scheduled advance leaves them and the scans of other tests alone.
+ */
+class RescoreServiceTest extends ServiceTestBase {
+    @Autowired
+    PredictionJobService predictionJobService;
+    @Autowired
+    RescoreRunRepository rescoreRunRepository;
+    @Autowired
+    EcgScanRepository scanRepository;
+    @Autowired
+    MlProperties mlProperties;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    UUID doctorId;
+    UUID scanId;
+    RescoreRun run;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        doctorId = createDoctor();
+        scanId = createScan(createPatient(doctorId), doctorId);
+        run = rescoreRunRepository.save(RescoreRun.builder()
+                .modelVersion("v1.0")
+                .threshold(new BigDecimal("0.5"))
+                .status(RunStatus.completed)
+                .startedBy(doctorId)
+                .build());
+        doReturn(Prediction.of("ASD", 0.9)).when(httpInferenceEngine).predict(any());
+    }
+
+    @Test
+    void queuedJobsRunAndRecordAResult() throws Exception {
+        assertTrue(enqueueRescore());
+
+        PredictionJob job = rescoreJob().orElseThrow();
+        assertTrue(job.getBackground());
+        await("the job to succeed", () -> predictionJobRepository.findById(job.getJobId()).orElseThrow()
+                .getStatus() == JobStatus.succeeded);
+        assertEquals(1, countResults());
+    }
+
+    @Test
+    void scansWithAResultAreSkippedWhenResultsAreNotReused() throws Exception {
+        assertTrue(enqueueRescore());
+        await("the result", () -> countResults() == 1);
+
+        mlProperties.getResultCache().setEnabled(false);
+        try {
+            assertFalse(enqueueRescore());
+        } finally {
+            mlProperties.getResultCache().setEnabled(true);
+        }
+        assertEquals(1, countResults());
+    }
+
+    @Test
+    void scansQueuedConcurrentlyAreLeftToTheOtherJob() {
+        jdbcTemplate.update("insert into prediction_job(job_id, scan_id, patient_id, requested_by, model_version, "
+                + "threshold, status, dedup_key, next_attempt_at) "
+                + "select ?, scan_id, patient_id, ?, 'v1.0', 0.5, 'queued', ?, timestamp '2999-01-01 00:00:00' "
+                + "from ecg_scan where scan_id = ?", UUID.randomUUID().toString(), doctorId.toString(),
+                scanId + "|v1.0|0.5000", scanId.toString());
+        // As if the other job was queued after this run looked for one
+        doReturn(Optional.empty()).when(predictionJobRepository).findByDedupKey(anyString());
+
+        assertFalse(enqueueRescore());
+        assertTrue(rescoreJob().isEmpty());
+    }
+
+    boolean enqueueRescore() {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            EcgScan scan = scanRepository.findById(scanId).orElseThrow();
+            return predictionJobService.enqueueRescore(run, scan);
+        }));
+    }
+
+    Optional<PredictionJob> rescoreJob() {
+        return predictionJobRepository.findAll().stream()
+                .filter(job -> run.getRunId().equals(job.getRescoreRunId()))
+                .findFirst();
+    }
+
+    int countResults() {
+        return jdbcTemplate.queryForObject("select count(*) from ml_result where scan_id = ?", Integer.class,
+                scanId.toString());
+    }
+}
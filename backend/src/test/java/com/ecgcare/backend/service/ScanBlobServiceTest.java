@@ -0,0 +1,134 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.entity.ScanBlob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ScanBlobServiceTest extends ServiceTestBase {
+    @Autowired
+    ScanBlobService scanBlobService;
+    @Autowired
+    BlobDeletionService blobDeletionService;
+
+    byte[] content;
+    String checksum;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        content = new byte[4096];
+        new Random().nextBytes(content);
+        checksum = scanBlobService.checksum(new ByteArrayInputStream(content));
+    }
+
+    @Test
+    void identicalContentIsStoredOnceAndCountedPerReference() throws Exception {
+        String objectKey = acquire().getObjectKey();
+        assertEquals(objectKey, acquire().getObjectKey());
+        verify(scanStorage, times(1)).put(eq(objectKey), any(), anyLong(), any());
+        assertEquals(2, refCount());
+
+        scanBlobService.release(objectKey);
+        assertEquals(1, refCount());
+        assertEquals(0, pendingDeletions(objectKey));
+
+        scanBlobService.release(objectKey);
+        assertEquals(0, blobRows());
+        assertEquals(1, pendingDeletions(objectKey));
+    }
+
+    @Test
+    void acquiringReleasedContentCancelsItsDeletion() throws Exception {
+        String objectKey = acquire().getObjectKey();
+        scanBlobService.release(objectKey);
+        assertEquals(1, pendingDeletions(objectKey));
+
+        acquire();
+        assertEquals(0, pendingDeletions(objectKey));
+        blobDeletionService.drain();
+        assertTrue(scanStorage.stat(objectKey).isPresent());
+        assertArrayEquals(content, read(objectKey));
+    }
+
+    @Test
+    void acquiringContentWhileItIsBeingDeletedWaitsAndStoresItAgain() throws Exception {
+        // Only this test's deletion is due when the outbox is drained below
+        blobDeletionService.drain();
+        String objectKey = acquire().getObjectKey();
+        scanBlobService.release(objectKey);
+
+        CountDownLatch deleting = new CountDownLatch(1);
+        CountDownLatch finishDeleting = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            deleting.countDown();
+            finishDeleting.await(10, TimeUnit.SECONDS);
+            return invocation.callRealMethod();
+        }).when(scanStorage).deleteAll(List.of(objectKey));
+
+        CompletableFuture<Void> drain = CompletableFuture.runAsync(blobDeletionService::drain);
+        assertTrue(deleting.await(10, TimeUnit.SECONDS));
+        CompletableFuture<ScanBlob> reacquired = CompletableFuture.supplyAsync(() -> {
+            try {
+                return acquire();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // The deletion holds its outbox entry, so the upload cannot cancel it and waits instead
+        Thread.sleep(300);
+        assertFalse(reacquired.isDone());
+
+        finishDeleting.countDown();
+        drain.get(10, TimeUnit.SECONDS);
+        reacquired.get(10, TimeUnit.SECONDS);
+        assertEquals(1, refCount());
+        assertEquals(0, pendingDeletions(objectKey));
+        assertTrue(scanStorage.stat(objectKey).isPresent());
+        assertArrayEquals(content, read(objectKey));
+    }
+
+    ScanBlob acquire() throws Exception {
+        return scanBlobService.acquire(checksum, content.length, "image/png",
+                () -> new ByteArrayInputStream(content));
+    }
+
+    byte[] read(String objectKey) throws Exception {
+        try (InputStream in = scanBlobService.open(objectKey, 0, null)) {
+            return in.readAllBytes();
+        }
+    }
+
+    int refCount() {
+        return jdbcTemplate.queryForObject("select ref_count from scan_blob where checksum = ?", Integer.class,
+                checksum);
+    }
+
+    int blobRows() {
+        return jdbcTemplate.queryForObject("select count(*) from scan_blob where checksum = ?", Integer.class,
+                checksum);
+    }
+
+    int pendingDeletions(String objectKey) {
+        return jdbcTemplate.queryForObject("select count(*) from blob_deletion where object_key = ?",
+                Integer.class, objectKey);
+    }
+}
@@ -0,0 +1,235 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.dto.request.UploadInitiateRequest;
+import com.ecgcare.backend.dto.response.ScanResponse;
+import com.ecgcare.backend.dto.response.UploadSessionResponse;
+import com.ecgcare.backend.entity.UploadSession.UploadStatus;
+import com.ecgcare.backend.exception.BadRequestException;
+import com.ecgcare.backend.storage.ScanStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doReturn;
+
+class ScanUploadServiceTest extends ServiceTestBase {
+    private static final int CHUNK = 1024;
+
+    @Autowired
+    ScanUploadService scanUploadService;
+    @Autowired
+    ScanBlobService scanBlobService;
+
+    UUID doctorId;
+    UUID patientId;
+    byte[] content;
+
+    @BeforeEach
+    void setUp() {
+        doctorId = createDoctor();
+        patientId = createPatient(doctorId);
+        content = new byte[CHUNK + 100];
+        new Random().nextBytes(content);
+    }
+
+    @Test
+    void partsAreEncryptedAtRest() throws Exception {
+        UploadSessionResponse session = initiate();
+        uploadPart(session, 1);
+        uploadPart(session, 2);
+
+        List<String> partKeys;
+        try (Stream<ScanStorage.StoredObject> parts = scanStorage.list("uploads/" + session.getUploadId() + "/")) {
+            partKeys = parts.map(ScanStorage.StoredObject::key).toList();
+        }
+        assertEquals(2, partKeys.size());
+        for (String partKey : partKeys) {
+            byte[] stored;
+            try (InputStream in = scanStorage.get(partKey)) {
+                stored = in.readAllBytes();
+            }
+            assertFalse(contains(stored, Arrays.copyOfRange(content, 0, 64)));
+            assertFalse(contains(stored, Arrays.copyOfRange(content, CHUNK, CHUNK + 64)));
+        }
+
+        ScanResponse scan = scanUploadService.complete(session.getUploadId(), doctorId);
+        try (InputStream in = scanBlobService.open(scan.getStorageUri(), 0, null)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void abortAfterCompletionLeavesTheSessionCompleted() throws Exception {
+        UploadSessionResponse session = initiate();
+        uploadPart(session, 1);
+        uploadPart(session, 2);
+        ScanResponse scan = scanUploadService.complete(session.getUploadId(), doctorId);
+
+        assertThrows(BadRequestException.class, () -> scanUploadService.abort(session.getUploadId(), doctorId));
+
+        UploadSessionResponse after = scanUploadService.getSession(session.getUploadId(), doctorId);
+        assertEquals(UploadStatus.completed, after.getStatus());
+        assertEquals(scan.getScanId(), after.getScanId());
+    }
+
+    @Test
+    void abortRemovesReceivedParts() throws Exception {
+        UploadSessionResponse session = initiate();
+        uploadPart(session, 1);
+
+        scanUploadService.abort(session.getUploadId(), doctorId);
+
+        assertEquals(UploadStatus.aborted, scanUploadService.getSession(session.getUploadId(), doctorId).getStatus());
+        assertEquals(0, countParts(session));
+        assertThrows(BadRequestException.class, () -> uploadPart(session, 2));
+    }
+
+    @Test
+    void expiredSessionsAreClosedAndTheirPartsRemoved() throws Exception {
+        UploadSessionResponse session = initiate();
+        uploadPart(session, 1);
+        jdbcTemplate.update("update upload_session set expires_at = ? where upload_id = ?",
+                OffsetDateTime.now().minusMinutes(1), session.getUploadId().toString());
+
+        scanUploadService.expireStaleSessions();
+
+        assertEquals(UploadStatus.expired, scanUploadService.getSession(session.getUploadId(), doctorId).getStatus());
+        assertEquals(0, countParts(session));
+    }
+
+    @Test
+    void failedCompletionRestoresTheSessionExpiry() throws Exception {
+        UploadSessionResponse session = initiate();
+        uploadPart(session, 1);
+        uploadPart(session, 2);
+        // The part objects disappear, so the completion fails after the session entered completing
+        OffsetDateTime expiresAt = OffsetDateTime.now().plusSeconds(30);
+        jdbcTemplate.update("update upload_session set expires_at = ? where upload_id = ?", expiresAt,
+                session.getUploadId().toString());
+        try (Stream<ScanStorage.StoredObject> parts = scanStorage.list("uploads/" + session.getUploadId() + "/")) {
+            scanStorage.deleteAll(parts.map(ScanStorage.StoredObject::key).toList());
+        }
+
+        assertThrows(RuntimeException.class, () -> scanUploadService.complete(session.getUploadId(), doctorId));
+
+        // Reopened with its own expiry rather than the completing timeout
+        UploadSessionResponse reopened = scanUploadService.getSession(session.getUploadId(), doctorId);
+        assertEquals(UploadStatus.active, reopened.getStatus());
+        assertEquals(expiresAt.toInstant().toEpochMilli(), reopened.getExpiresAt().toInstant().toEpochMilli());
+    }
+
+    @Test
+    void completingSessionsAreNotExpiredBeforeTheirDeadline() throws Exception {
+        UploadSessionResponse session = initiate();
+        jdbcTemplate.update("update upload_session set status = 'completing', expires_at = ? where upload_id = ?",
+                OffsetDateTime.now().plusMinutes(30), session.getUploadId().toString());
+
+        scanUploadService.expireStaleSessions();
+
+        assertEquals(UploadStatus.completing,
+                scanUploadService.getSession(session.getUploadId(), doctorId).getStatus());
+    }
+
+    @Test
+    void partsThatFailToDeleteAfterCompletionAreQueuedForDeletion() throws Exception {
+        UploadSessionResponse session = initiate();
+        uploadPart(session, 1);
+        uploadPart(session, 2);
+        List<String> partKeys;
+        try (Stream<ScanStorage.StoredObject> parts = scanStorage.list("uploads/" + session.getUploadId() + "/")) {
+            partKeys = parts.map(ScanStorage.StoredObject::key).toList();
+        }
+        doReturn(Map.of(partKeys.get(0), "unavailable")).when(scanStorage).deleteAll(partKeys);
+
+        scanUploadService.complete(session.getUploadId(), doctorId);
+
+        assertEquals(List.of(partKeys.get(0)), jdbcTemplate.queryForList(
+                "select object_key from blob_deletion where object_key like ?", String.class,
+                "uploads/" + session.getUploadId() + "/%"));
+    }
+
+    private long countParts(UploadSessionResponse session) throws Exception {
+        try (Stream<ScanStorage.StoredObject> parts = scanStorage.list("uploads/" + session.getUploadId() + "/")) {
+            return parts.count();
+        }
+    }
+
+    @Test
+    void completionRequiresEveryPart() throws Exception {
+        UploadSessionResponse session = initiate();
+        uploadPart(session, 1);
+
+        assertThrows(BadRequestException.class, () -> scanUploadService.complete(session.getUploadId(), doctorId));
+        assertEquals(UploadStatus.active, scanUploadService.getSession(session.getUploadId(), doctorId).getStatus());
+    }
+
+    @Test
+    void resentPartsReplaceTheEarlierCopy() throws Exception {
+        UploadSessionResponse session = initiate();
+        uploadPart(session, 1);
+        uploadPart(session, 1);
+        assertEquals(1, countParts(session));
+
+        uploadPart(session, 2);
+        ScanResponse scan = scanUploadService.complete(session.getUploadId(), doctorId);
+        try (InputStream in = scanBlobService.open(scan.getStorageUri(), 0, null)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void completedSessionsAcceptNoFurtherParts() throws Exception {
+        UploadSessionResponse session = initiate();
+        uploadPart(session, 1);
+        uploadPart(session, 2);
+        scanUploadService.complete(session.getUploadId(), doctorId);
+
+        assertThrows(BadRequestException.class, () -> uploadPart(session, 2));
+        assertThrows(BadRequestException.class, () -> scanUploadService.complete(session.getUploadId(), doctorId));
+        assertEquals(UploadStatus.completed, scanUploadService.getSession(session.getUploadId(), doctorId).getStatus());
+    }
+
+    private UploadSessionResponse initiate() {
+        UploadInitiateRequest request = new UploadInitiateRequest();
+        request.setPatientId(patientId);
+        request.setFilename("scan.png");
+        request.setMimetype("image/png");
+        request.setTotalSize((long) content.length);
+        request.setChunkSize((long) CHUNK);
+        return scanUploadService.initiate(request, doctorId);
+    }
+
+    private void uploadPart(UploadSessionResponse session, int partNumber) {
+        int from = (partNumber - 1) * CHUNK;
+        int length = Math.min(CHUNK, content.length - from);
+        scanUploadService.uploadPart(session.getUploadId(), partNumber,
+                new ByteArrayInputStream(content, from, length), length, doctorId);
+    }
+
+    private static boolean contains(byte[] data, byte[] part) {
+        outer:
+        for (int i = 0; i + part.length <= data.length; i++) {
+            for (int j = 0; j < part.length; j++) {
+                if (data[i + j] != part[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
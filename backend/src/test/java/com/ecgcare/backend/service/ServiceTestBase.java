@@ -0,0 +1,83 @@
+package com.ecgcare.backend.service;
+
+import com.ecgcare.backend.ml.HttpInferenceEngine;
+import com.ecgcare.backend.repository.PredictionJobRepository;
+import com.ecgcare.backend.storage.ScanStorage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Shared context for service tests: in-memory object storage, small upload chunks and timers slow
+ * enough that scheduled jobs stay out of the way, so tests drive them directly. Storage, the ML
+ * service, the model backend and the job queue are spies, so tests can make them fail or block;
+ * images go to the model as stored, so stubbing the backend is enough to skip reading them.
+ */
+@SpringBootTest(properties = {
+        "storage.backend=memory",
+        "scans.upload.min-chunk-size=1024",
+        "scans.deletion.interval=PT1H",
+        "scans.reconcile.orphan-grace=PT0S",
+        "ml.preprocess.enabled=false"
+})
+abstract class ServiceTestBase {
+    @MockitoSpyBean
+    ScanStorage scanStorage;
+    @MockitoSpyBean
+    MLService mlService;
+    @MockitoSpyBean
+    HttpInferenceEngine httpInferenceEngine;
+    @MockitoSpyBean
+    PredictionJobRepository predictionJobRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    UUID createDoctor() {
+        UUID doctorId = UUID.randomUUID();
+        jdbcTemplate.update("insert into doctor(doctor_id, full_name, email) values (?, ?, ?)",
+                doctorId.toString(), "Doctor", doctorId + "@example.org");
+        return doctorId;
+    }
+
+    /**
+     * Creates a patient the doctor owns.
+     */
+    UUID createPatient(UUID doctorId) {
+        UUID patientId = UUID.randomUUID();
+        jdbcTemplate.update("insert into patient(patient_id, enc_payload, enc_payload_iv, enc_payload_tag) "
+                + "values (?, ?, ?, ?)", patientId.toString(), new byte[1], new byte[1], new byte[1]);
+        jdbcTemplate.update("insert into patient_access(doctor_id, patient_id, role) values (?, ?, ?)",
+                doctorId.toString(), patientId.toString(), "owner");
+        return patientId;
+    }
+
+    /**
+     * Creates a scan without content; tests that need the image stub the ML service.
+     */
+    UUID createScan(UUID patientId, UUID doctorId) {
+        UUID scanId = UUID.randomUUID();
+        jdbcTemplate.update("insert into ecg_scan(scan_id, patient_id, storage_uri, mimetype, uploaded_by) "
+                + "values (?, ?, ?, ?, ?)", scanId.toString(), patientId.toString(), "scans/" + scanId,
+                "image/png", doctorId.toString());
+        return scanId;
+    }
+
+    /**
+     * Waits for work done on another thread.
+     */
+    static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("Timed out waiting for " + what);
+            }
+            Thread.sleep(20);
+        }
+    }
+}
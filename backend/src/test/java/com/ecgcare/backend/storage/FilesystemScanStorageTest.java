@@ -0,0 +1,59 @@
+package com.ecgcare.backend.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilesystemScanStorageTest {
+    @TempDir
+    Path root;
+
+    @Test
+    void storesReadsRangesAndComposes() throws Exception {
+        FilesystemScanStorage storage = new FilesystemScanStorage(root);
+        put(storage, "uploads/u1/part-1", "hello ");
+        put(storage, "uploads/u1/part-2", "world");
+
+        storage.compose("blobs/sha256/ab/abc", List.of("uploads/u1/part-1", "uploads/u1/part-2"), 11, "text/plain");
+
+        assertEquals("hello world", read(storage, "blobs/sha256/ab/abc", 0, null));
+        assertEquals("lo wo", read(storage, "blobs/sha256/ab/abc", 3, 5L));
+        assertEquals(11, storage.stat("blobs/sha256/ab/abc").orElseThrow().size());
+        try (Stream<ScanStorage.StoredObject> uploads = storage.list("uploads/")) {
+            assertEquals(List.of("uploads/u1/part-1", "uploads/u1/part-2"),
+                    uploads.map(ScanStorage.StoredObject::key).sorted().toList());
+        }
+
+        assertTrue(storage.deleteAll(List.of("uploads/u1/part-1", "uploads/u1/part-2")).isEmpty());
+        assertThrows(NoSuchFileException.class, () -> storage.get("uploads/u1/part-1"));
+        assertTrue(storage.stat("uploads/u1/part-1").isEmpty());
+    }
+
+    @Test
+    void rejectsKeysOutsideTheRoot() throws Exception {
+        FilesystemScanStorage storage = new FilesystemScanStorage(root);
+        assertThrows(IOException.class, () -> put(storage, "../escape", "x"));
+    }
+
+    private static void put(ScanStorage storage, String key, String content) throws IOException {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        storage.put(key, new ByteArrayInputStream(data), data.length, "text/plain");
+    }
+
+    private static String read(ScanStorage storage, String key, long offset, Long length) throws IOException {
+        try (var in = storage.get(key, offset, length)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.ecgcare.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(3, OPEN_DURATION, now::get);
+
+    @Test
+    void opensAfterConsecutiveFailuresAndProbesOnceTheWaitIsOver() {
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.closed, breaker.getState());
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.open, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+
+        now.addAndGet(OPEN_DURATION.toNanos());
+        assertEquals(CircuitBreaker.State.half_open, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        // Only one probe at a time
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.closed, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void failedProbeReopensForAnotherPeriod() {
+        open();
+        now.addAndGet(OPEN_DURATION.toNanos());
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.open, breaker.getState());
+        now.addAndGet(OPEN_DURATION.toNanos() - 1);
+        assertFalse(breaker.tryAcquire());
+        now.incrementAndGet();
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void releasedCallsLeaveTheStateAlone() {
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertTrue(breaker.tryAcquire());
+        breaker.release();
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.closed, breaker.getState());
+
+        open();
+        now.addAndGet(OPEN_DURATION.toNanos());
+        assertTrue(breaker.tryAcquire());
+        breaker.release();
+        // The released probe frees the way for the next one
+        assertEquals(CircuitBreaker.State.half_open, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    private void open() {
+        while (breaker.getState() != CircuitBreaker.State.open) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+    }
+}
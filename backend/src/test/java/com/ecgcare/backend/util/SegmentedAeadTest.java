@@ -0,0 +1,93 @@
+package com.ecgcare.backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SegmentedAeadTest {
+    private static final int SEGMENT_SIZE = 64;
+
+    @Test
+    void roundTripsAcrossSegmentBoundaries() throws Exception {
+        SecretKey key = newKey();
+        for (int size : new int[]{0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 3 * SEGMENT_SIZE, 1000}) {
+            byte[] plaintext = randomBytes(size);
+            byte[] ciphertext = encrypt(plaintext, key);
+            assertEquals(SegmentedAead.ciphertextSize(size, SEGMENT_SIZE), ciphertext.length);
+
+            InputStream in = new ByteArrayInputStream(ciphertext);
+            SegmentedAead.Header header = SegmentedAead.readHeader(in);
+            assertArrayEquals(plaintext, SegmentedAead.decrypt(in, key, header, 0, -1).readAllBytes());
+        }
+    }
+
+    @Test
+    void decryptsRangesFromCoveringSegments() throws Exception {
+        SecretKey key = newKey();
+        byte[] plaintext = randomBytes(1000);
+        byte[] ciphertext = encrypt(plaintext, key);
+        SegmentedAead.Header header = SegmentedAead.readHeader(new ByteArrayInputStream(ciphertext));
+        long lastSegment = SegmentedAead.segmentCount(plaintext.length, SEGMENT_SIZE) - 1;
+
+        int offset = 130;
+        int length = 200;
+        long first = offset / SEGMENT_SIZE;
+        long end = (offset + length - 1) / SEGMENT_SIZE;
+        int from = (int) header.segmentOffset(first);
+        int to = (int) Math.min(header.segmentOffset(end + 1), ciphertext.length);
+
+        InputStream segments = new ByteArrayInputStream(Arrays.copyOfRange(ciphertext, from, to));
+        InputStream decrypted = SegmentedAead.decrypt(segments, key, header, first, lastSegment);
+        decrypted.skipNBytes(offset - first * SEGMENT_SIZE);
+        assertArrayEquals(Arrays.copyOfRange(plaintext, offset, offset + length), decrypted.readNBytes(length));
+    }
+
+    @Test
+    void rejectsTamperedCiphertext() throws Exception {
+        SecretKey key = newKey();
+        byte[] ciphertext = encrypt(randomBytes(200), key);
+        ciphertext[SegmentedAead.HEADER_LENGTH + SEGMENT_SIZE + 20] ^= 1;
+
+        InputStream in = new ByteArrayInputStream(ciphertext);
+        SegmentedAead.Header header = SegmentedAead.readHeader(in);
+        assertThrows(IOException.class, () -> SegmentedAead.decrypt(in, key, header, 0, -1).readAllBytes());
+    }
+
+    @Test
+    void rejectsTruncationAtSegmentBoundary() throws Exception {
+        SecretKey key = newKey();
+        byte[] ciphertext = encrypt(randomBytes(3 * SEGMENT_SIZE), key);
+        SegmentedAead.Header header = SegmentedAead.readHeader(new ByteArrayInputStream(ciphertext));
+        byte[] truncated = Arrays.copyOf(ciphertext, (int) header.segmentOffset(2));
+
+        InputStream in = new ByteArrayInputStream(truncated);
+        SegmentedAead.readHeader(in);
+        assertThrows(IOException.class, () -> SegmentedAead.decrypt(in, key, header, 0, -1).readAllBytes());
+    }
+
+    private static byte[] encrypt(byte[] plaintext, SecretKey key) throws IOException {
+        return SegmentedAead.encrypt(new ByteArrayInputStream(plaintext), key, SEGMENT_SIZE).readAllBytes();
+    }
+
+    private static SecretKey newKey() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        return generator.generateKey();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
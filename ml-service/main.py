@@ -1,11 +1,12 @@
-from fastapi import FastAPI, HTTPException
+from fastapi import FastAPI, HTTPException, Request
+from starlette.datastructures import UploadFile
 from pydantic import BaseModel 
 from transformers import ViTImageProcessor, ViTForImageClassification 
 from PIL import Image
 import torch
 import base64
 import io
-from typing import Optional
+from typing import List, Optional
 
 app = FastAPI()
 
@@ -26,35 +27,54 @@ class ScanRequest(BaseModel):
     # Keep mri_scan_id for backward compatibility
     mri_scan_id: Optional[int] = None
 
+class BatchScanRequest(BaseModel):
+    items: List[ScanRequest]
+
 @app.get("/")
 def read_root():
     return {"message": "Hello! The ML Service is running."}
 
 
+def _load_json_image(request: ScanRequest):
+    # Check if image data is provided
+    if request.image_data:
+        # Decode base64 image data
+        try:
+            image_bytes = base64.b64decode(request.image_data)
+            image = Image.open(io.BytesIO(image_bytes))
+            print(f"--- Received image from backend (size: {len(image_bytes)} bytes) ---")
+            return image
+        except Exception as e:
+            raise HTTPException(status_code=400, detail=f"Failed to decode image data: {str(e)}")
+    # Fallback: try to use test image (for backward compatibility during development)
+    try:
+        image = Image.open("test_image.jpg")
+        print("--- Using fallback test_image.jpg ---")
+        return image
+    except FileNotFoundError:
+        raise HTTPException(status_code=400, detail="No image data provided and test_image.jpg not found")
+
+
 # --- 5. Create the REAL "Predict" Endpoint ---
 @app.post("/predict")
-async def predict_mri(request: ScanRequest):
+async def predict_mri(http_request: Request):
     """
     This is the main endpoint your Java backend will call.
-    Accepts base64 encoded image data from the backend.
+    Accepts the raw image as application/octet-stream with the scan id in the X-Scan-Id header,
+    or base64 encoded image data in a JSON body.
     """
     try:
-        # Check if image data is provided
-        if request.image_data:
-            # Decode base64 image data
+        if http_request.headers.get("content-type", "").startswith("application/octet-stream"):
+            image_bytes = await http_request.body()
+            request = ScanRequest(scan_id=http_request.headers.get("x-scan-id"))
             try:
-                image_bytes = base64.b64decode(request.image_data)
                 image = Image.open(io.BytesIO(image_bytes))
                 print(f"--- Received image from backend (size: {len(image_bytes)} bytes) ---")
             except Exception as e:
                 raise HTTPException(status_code=400, detail=f"Failed to decode image data: {str(e)}")
         else:
-            # Fallback: try to use test image (for backward compatibility during development)
-            try:
-                image = Image.open("test_image.jpg")
-                print("--- Using fallback test_image.jpg ---")
-            except FileNotFoundError:
-                raise HTTPException(status_code=400, detail="No image data provided and test_image.jpg not found")
+            request = ScanRequest(**(await http_request.json()))
+            image = _load_json_image(request)
     except HTTPException:
         raise
     except Exception as e:
@@ -101,3 +121,63 @@ async def predict_mri(request: ScanRequest):
     }
 
 
+
+
+def _classify(logits_row):
+    """Turns one row of logits into the (simulated) CHD label and its confidence."""
+    predicted_class_idx = logits_row.argmax(-1).item()
+    prediction = "ASD" if predicted_class_idx % 2 == 0 else "VSD"
+    confidence = torch.softmax(logits_row, dim=-1)[predicted_class_idx].item()
+    return prediction, round(confidence, 4)
+
+
+@app.post("/predict/batch")
+async def predict_batch(http_request: Request):
+    """
+    Batched variant of /predict: all decodable images go through the model in one forward pass.
+    Accepts multipart/form-data with one "images" part per scan (the part's filename is the scan id),
+    or a JSON body of base64 items. Results are returned in request order; an item that cannot be
+    decoded gets status FAILED without failing the rest of the batch.
+    """
+    if processor is None or model is None:
+        raise HTTPException(status_code=500, detail="ML model not loaded. Check server logs for errors.")
+
+    if http_request.headers.get("content-type", "").startswith("multipart/form-data"):
+        form = await http_request.form()
+        items = []
+        for part in form.getlist("images"):
+            if isinstance(part, UploadFile):
+                items.append((part.filename, await part.read()))
+    else:
+        batch = BatchScanRequest(**(await http_request.json()))
+        # Kept as base64 here and decoded per item below, so one bad item only fails itself
+        items = [(item.scan_id, item.image_data) for item in batch.items]
+
+    results = [None] * len(items)
+    images = []
+    positions = []
+    for i, (scan_id, image_data) in enumerate(items):
+        try:
+            if not image_data:
+                raise ValueError("No image data provided")
+            image_bytes = base64.b64decode(image_data) if isinstance(image_data, str) else image_data
+            images.append(Image.open(io.BytesIO(image_bytes)).convert("RGB"))
+            positions.append(i)
+        except Exception as e:
+            results[i] = {"scan_id": scan_id, "status": "FAILED", "error": f"Failed to decode image data: {str(e)}"}
+
+    if images:
+        inputs = processor(images=images, return_tensors="pt")
+        with torch.no_grad():
+            logits = model(**inputs).logits
+        for row, i in enumerate(positions):
+            prediction, confidence = _classify(logits[row])
+            results[i] = {
+                "scan_id": items[i][0],
+                "prediction": prediction,
+                "confidence_score": confidence,
+                "status": "COMPLETED"
+            }
+
+    print(f"Batch of {len(items)} complete ({len(images)} predicted)")
+    return {"results": results}